@@ -3,7 +3,7 @@ import React, { useState, useEffect } from 'react';
 import { SafeAreaView, StyleSheet, View, ActivityIndicator, Text } from 'react-native';
 import Dashboard from './src/screens/Dashboard';
 import MandatorySetupScreen from './src/screens/MandatorySetupScreen';
-import SharedPreferences from './src/services/SharedPreferences';
+import SharedPreferences from './services/SharedPreferences';
 import useBackgroundServices from './src/hooks/useBackgroundServices';
 import { initializeHeartbeat } from './src/services/Heartbeat';
 
@@ -5,16 +5,29 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
+import android.util.Log;
 
 public class BootReceiver extends BroadcastReceiver {
     @Override
     public void onReceive(Context context, Intent intent) {
-        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction()) || "restartservice".equals(intent.getAction())) {
+        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
+            RestartSupervisor.getInstance(context).onBoot();
+            // Geofences do not survive a reboot; re-register the locally persisted set
+            new GeofenceManager(context).restoreGeofences();
+        }
+        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction()) || RestartSupervisor.ACTION_RESTART.equals(intent.getAction())) {
             Intent serviceIntent = new Intent(context, GuardianService.class);
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                context.startForegroundService(serviceIntent);
-            } else {
-                context.startService(serviceIntent);
+            // Restarts carry the action so the service counts them toward crash-loop detection
+            serviceIntent.setAction(intent.getAction());
+            try {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                    context.startForegroundService(serviceIntent);
+                } else {
+                    context.startService(serviceIntent);
+                }
+            } catch (IllegalStateException e) {
+                // Background FGS starts can be refused (e.g. an inexact alarm on Android 12+)
+                Log.e("BootReceiver", "Could not start GuardianService", e);
             }
         }
     }
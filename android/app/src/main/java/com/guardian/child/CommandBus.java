@@ -0,0 +1,291 @@
+package com.guardian.child;
+
+import android.content.Context;
+import android.media.Ringtone;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.os.Vibrator;
+import android.util.Log;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactContext;
+import com.guardian.child.webrtc.WebRTCModule;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * In-process command queue with a single dedicated worker thread.
+ *
+ * Commands are identified by id, so a command delivered twice is executed once. Commands
+ * only merge with the command at the tail of the queue, so the requested order is kept:
+ * a muteAudio/unmuteAudio replaces an audio command right before it (only the final audio
+ * state matters), repeated vibrateDevice calls become one longer vibration and an identical
+ * command right behind another is dropped.
+ */
+public class CommandBus {
+
+    private static final String TAG = "CommandBus";
+    private static final int CAPACITY = 64;
+    private static final int RECENT_ID_LIMIT = 256;
+    private static final long VIBRATE_MS = 500;
+    private static final long MAX_VIBRATE_MS = 2000;
+
+    public static class CommandMetrics {
+        public long count;
+        public long totalLatencyMs;
+        public long maxLatencyMs;
+    }
+
+    private static class Command {
+        final String id;
+        final String name;
+        final long enqueuedAt = SystemClock.elapsedRealtime();
+        int repeat = 1;
+
+        Command(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    private static CommandBus instance;
+
+    private final Context context;
+    private final ArrayDeque<Command> queue = new ArrayDeque<>();
+    private final LinkedHashSet<String> recentIds = new LinkedHashSet<>();
+    private final Map<String, CommandMetrics> metrics = new HashMap<>();
+    private volatile WebRTCModule webRTCModule;
+
+    // A simple promise for internal calls
+    private final Promise internalPromise = new Promise() {
+        @Override
+        public void resolve(Object value) {
+            Log.d(TAG, "Internal promise resolved");
+        }
+
+        @Override
+        public void reject(String code, String message) {
+            Log.e(TAG, "Internal promise rejected: " + code + ", " + message);
+        }
+
+        @Override
+        public void reject(String code, Throwable throwable) {
+            Log.e(TAG, "Internal promise rejected: " + code, throwable);
+        }
+
+        @Override
+        public void reject(String code, String message, Throwable throwable) {
+            Log.e(TAG, "Internal promise rejected: " + code + ", " + message, throwable);
+        }
+    };
+
+    private CommandBus(Context context) {
+        this.context = context.getApplicationContext();
+        Thread worker = new Thread(this::workLoop, "CommandBus");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public static synchronized CommandBus getInstance(Context context) {
+        if (instance == null) {
+            instance = new CommandBus(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Lets a caller that already holds the React context hand over the WebRTC module, so the
+     * worker never has to look it up through the ReactInstanceManager.
+     */
+    public void attach(ReactContext reactContext) {
+        if (webRTCModule == null) {
+            webRTCModule = reactContext.getNativeModule(WebRTCModule.class);
+        }
+    }
+
+    public String submit(String command) {
+        String id = UUID.randomUUID().toString();
+        return submit(id, command) ? id : null;
+    }
+
+    /**
+     * Queues a command. Returns false only when the queue is full; a duplicate id or a
+     * command merged into a pending one counts as accepted.
+     */
+    public synchronized boolean submit(String id, String command) {
+        if (recentIds.contains(id)) {
+            Log.d(TAG, "Dropping duplicate command " + id);
+            return true;
+        }
+
+        if (!coalesce(command)) {
+            if (queue.size() >= CAPACITY) {
+                // Not remembered, so the sender can retry the same id
+                Log.w(TAG, "Command queue full, rejecting " + command);
+                return false;
+            }
+            queue.addLast(new Command(id, command));
+            notifyAll();
+        }
+
+        recentIds.add(id);
+        if (recentIds.size() > RECENT_ID_LIMIT) {
+            Iterator<String> oldest = recentIds.iterator();
+            oldest.next();
+            oldest.remove();
+        }
+        return true;
+    }
+
+    public synchronized Map<String, CommandMetrics> getMetrics() {
+        Map<String, CommandMetrics> copy = new HashMap<>();
+        for (Map.Entry<String, CommandMetrics> entry : metrics.entrySet()) {
+            CommandMetrics m = new CommandMetrics();
+            m.count = entry.getValue().count;
+            m.totalLatencyMs = entry.getValue().totalLatencyMs;
+            m.maxLatencyMs = entry.getValue().maxLatencyMs;
+            copy.put(entry.getKey(), m);
+        }
+        return copy;
+    }
+
+    // Caller holds the lock. Returns true if the command was absorbed by the pending queue.
+    private boolean coalesce(String command) {
+        // Merging past other commands would reorder them (startCamera, stopCamera, startCamera,
+        // or a mute overtaking the stream it targets)
+        Command tail = queue.peekLast();
+        if (tail != null && isAudio(command) && isAudio(tail.name)) {
+            // Only the last requested audio state matters
+            queue.pollLast();
+            return false;
+        }
+        if (tail != null && tail.name.equals(command)) {
+            if ("vibrateDevice".equals(command)) tail.repeat++;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isAudio(String command) {
+        return "muteAudio".equals(command) || "unmuteAudio".equals(command);
+    }
+
+    private void workLoop() {
+        while (true) {
+            Command command;
+            synchronized (this) {
+                while (queue.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                command = queue.pollFirst();
+            }
+
+            try {
+                execute(command);
+            } catch (Exception e) {
+                Log.e(TAG, "Command " + command.name + " failed.", e);
+            }
+            record(command);
+        }
+    }
+
+    private synchronized void record(Command command) {
+        long latency = SystemClock.elapsedRealtime() - command.enqueuedAt;
+        CommandMetrics m = metrics.get(command.name);
+        if (m == null) {
+            m = new CommandMetrics();
+            metrics.put(command.name, m);
+        }
+        m.count++;
+        m.totalLatencyMs += latency;
+        m.maxLatencyMs = Math.max(m.maxLatencyMs, latency);
+        Log.d(TAG, "Command " + command.name + " (" + command.id + ") done in " + latency + "ms");
+    }
+
+    private void execute(Command command) {
+        switch (command.name) {
+            case "playAlarm":
+                playAlarm();
+                return;
+            case "vibrateDevice":
+                vibrateDevice(Math.min(VIBRATE_MS * command.repeat, MAX_VIBRATE_MS));
+                return;
+            default:
+                break;
+        }
+
+        WebRTCModule module = resolveWebRTCModule();
+        if (module == null) {
+            Log.e(TAG, "WebRTCModule is not available");
+            return;
+        }
+
+        // The WebRTC module attaches and detaches its stream components on GuardianService,
+        // which keeps the notification in sync.
+        switch (command.name) {
+            case "startCamera":
+                module.startCameraStream(internalPromise);
+                break;
+            case "stopCamera":
+                module.stopCameraStream(internalPromise);
+                break;
+            case "switchCamera":
+                module.switchCamera(internalPromise);
+                break;
+            case "startScreen":
+                module.startScreenStream(internalPromise);
+                break;
+            case "stopScreen":
+                module.stopScreenStream(internalPromise);
+                break;
+            case "muteAudio":
+                module.toggleAudio(false, internalPromise);
+                break;
+            case "unmuteAudio":
+                module.toggleAudio(true, internalPromise);
+                break;
+            default:
+                Log.w(TAG, "Unsupported command: " + command.name);
+        }
+    }
+
+    private WebRTCModule resolveWebRTCModule() {
+        if (webRTCModule == null) {
+            try {
+                MainApplication application = (MainApplication) context;
+                ReactContext reactContext = application.getReactNativeHost().getReactInstanceManager().getCurrentReactContext();
+                if (reactContext != null) attach(reactContext);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to get WebRTCModule", e);
+            }
+        }
+        return webRTCModule;
+    }
+
+    private void playAlarm() {
+        try {
+            Uri notification = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
+            Ringtone r = RingtoneManager.getRingtone(context, notification);
+            r.play();
+        } catch (Exception e) {
+            Log.e(TAG, "Error playing alarm", e);
+        }
+    }
+
+    private void vibrateDevice(long durationMs) {
+        Vibrator v = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
+        if (v != null && v.hasVibrator()) {
+            v.vibrate(durationMs);
+        }
+    }
+}
@@ -1,23 +1,24 @@
 
 package com.guardian.child;
 
-import android.content.Context;
-import android.content.Intent;
-import android.hardware.camera2.CameraManager;
-import android.os.Vibrator;
-import android.provider.MediaStore;
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Map;
 
 public class CommandExecutor extends ReactContextBaseJavaModule {
 
     private final ReactApplicationContext reactContext;
+    private final CommandBus commandBus;
 
     public CommandExecutor(ReactApplicationContext reactContext) {
         super(reactContext);
         this.reactContext = reactContext;
+        this.commandBus = CommandBus.getInstance(reactContext);
     }
 
     @Override
@@ -27,9 +28,36 @@ public class CommandExecutor extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void execute(String command, Promise promise) {
-        Intent serviceIntent = new Intent(reactContext, CommandService.class);
-        serviceIntent.putExtra("command", command);
-        reactContext.startService(serviceIntent);
-        promise.resolve("Command sent to service: " + command);
+        commandBus.attach(reactContext);
+        String commandId = commandBus.submit(command);
+        if (commandId == null) {
+            promise.reject("QUEUE_FULL", "Command queue is full: " + command);
+            return;
+        }
+        promise.resolve(commandId);
+    }
+
+    @ReactMethod
+    public void executeWithId(String commandId, String command, Promise promise) {
+        commandBus.attach(reactContext);
+        if (!commandBus.submit(commandId, command)) {
+            promise.reject("QUEUE_FULL", "Command queue is full: " + command);
+            return;
+        }
+        promise.resolve(commandId);
+    }
+
+    @ReactMethod
+    public void getCommandMetrics(Promise promise) {
+        WritableMap result = Arguments.createMap();
+        for (Map.Entry<String, CommandBus.CommandMetrics> entry : commandBus.getMetrics().entrySet()) {
+            CommandBus.CommandMetrics m = entry.getValue();
+            WritableMap item = Arguments.createMap();
+            item.putDouble("count", m.count);
+            item.putDouble("averageLatencyMs", m.count == 0 ? 0 : (double) m.totalLatencyMs / m.count);
+            item.putDouble("maxLatencyMs", m.maxLatencyMs);
+            result.putMap(entry.getKey(), item);
+        }
+        promise.resolve(result);
     }
 }
@@ -0,0 +1,77 @@
+package com.guardian.child
+
+import android.util.Log
+import com.google.firebase.firestore.ktx.firestore
+import com.google.firebase.ktx.Firebase
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Single writer for command results.
+ *
+ * Results arriving within a short window are folded per document (a later result for the
+ * same command replaces the earlier one) and committed together in one WriteBatch. Each
+ * caller is told the outcome of the commit its result went out in.
+ *
+ * Command status transitions are not written here: they go to commands/{childUid}, which
+ * needs the signed-in JS client (see RemoteCommandService).
+ */
+object CommandResultWriter {
+
+    private const val TAG = "CommandResultWriter"
+    private const val WINDOW_MS = 300L
+    private const val MAX_BATCH_SIZE = 500
+
+    private class PendingWrite(val data: Map<String, Any?>, val callbacks: MutableList<(Exception?) -> Unit>)
+
+    private val db = Firebase.firestore
+    private val executor = Executors.newSingleThreadScheduledExecutor()
+    private val pending = LinkedHashMap<String, PendingWrite>()
+    private var flushScheduled = false
+
+    /**
+     * Queues a result for childDevices/{deviceId}/responses/{commandId}. [onComplete] runs
+     * with null once the batch is committed, or with the error if the commit fails.
+     */
+    @Synchronized
+    fun putResult(deviceId: String, commandId: String, result: Map<String, Any?>, onComplete: (Exception?) -> Unit) {
+        val data = HashMap(result)
+        // Read by the server-side retention job
+        data["timestamp"] = System.currentTimeMillis()
+
+        val path = "childDevices/$deviceId/responses/$commandId"
+        val callbacks = pending[path]?.callbacks ?: mutableListOf()
+        callbacks.add(onComplete)
+        pending[path] = PendingWrite(data, callbacks)
+
+        if (!flushScheduled) {
+            flushScheduled = true
+            executor.schedule(::flush, WINDOW_MS, TimeUnit.MILLISECONDS)
+        }
+    }
+
+    private fun flush() {
+        val writes = synchronized(this) {
+            val snapshot = pending.toList()
+            pending.clear()
+            flushScheduled = false
+            snapshot
+        }
+
+        for (chunk in writes.chunked(MAX_BATCH_SIZE)) {
+            val batch = db.batch()
+            for ((path, write) in chunk) {
+                batch.set(db.document(path), write.data)
+            }
+            batch.commit()
+                .addOnSuccessListener {
+                    Log.d(TAG, "Committed ${chunk.size} command results.")
+                    chunk.forEach { (_, write) -> write.callbacks.forEach { it(null) } }
+                }
+                .addOnFailureListener { e ->
+                    Log.e(TAG, "Failed to commit ${chunk.size} command results.", e)
+                    chunk.forEach { (_, write) -> write.callbacks.forEach { it(e) } }
+                }
+        }
+    }
+}
@@ -2,25 +2,32 @@
 package com.guardian.child
 
 import android.annotation.SuppressLint
-import android.content.Context
 import android.os.Build
+import android.util.Log
 import com.facebook.react.bridge.ReactApplicationContext
 import com.facebook.react.bridge.ReactContextBaseJavaModule
 import com.facebook.react.bridge.ReactMethod
 import com.facebook.react.bridge.Promise
-import android.net.wifi.WifiManager
-import android.telephony.TelephonyManager // Import TelephonyManager
-import android.text.format.Formatter
-import android.os.BatteryManager
-import android.content.Intent
-import android.content.IntentFilter
 import com.google.android.gms.location.LocationServices
 import com.google.android.gms.location.Priority
 import com.google.android.gms.tasks.CancellationTokenSource
+import com.google.android.gms.tasks.Tasks
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
 
 class DeviceDetailsModule(reactContext: ReactApplicationContext) : ReactContextBaseJavaModule(reactContext) {
 
+    companion object {
+        private const val TAG = "DeviceDetailsModule"
+        private const val LOCATION_TIMEOUT_MS = 10_000L
+
+        // Shared by every module instance; getAll only blocks here while awaiting a location fix
+        private val executor = Executors.newFixedThreadPool(2)
+    }
+
     private val fusedLocationClient = LocationServices.getFusedLocationProviderClient(reactContext)
+    private val deviceState = DeviceStateCache.getInstance(reactContext)
 
     override fun getName(): String {
         return "DeviceDetailsModule"
@@ -46,50 +53,21 @@ class DeviceDetailsModule(reactContext: ReactApplicationContext) : ReactContextB
 
     @ReactMethod
     fun getIpAddress(promise: Promise) {
-        try {
-            val wifiManager = reactApplicationContext.applicationContext.getSystemService(Context.WIFI_SERVICE) as WifiManager
-            val ipAddress = Formatter.formatIpAddress(wifiManager.connectionInfo.ipAddress)
-            promise.resolve(ipAddress)
-        } catch (e: Exception) {
-            promise.reject("E_IP_ERROR", "Could not get IP address", e)
-        }
+        promise.resolve(deviceState.snapshot.ipAddress)
     }
 
     @ReactMethod
     fun getSimOperator(promise: Promise) {
-        try {
-            val telephonyManager = reactApplicationContext.getSystemService(Context.TELEPHONY_SERVICE) as TelephonyManager
-            val operatorName = telephonyManager.simOperatorName
-            if (operatorName.isNullOrEmpty()) {
-                promise.resolve("N/A") // No SIM or no name
-            } else {
-                promise.resolve(operatorName)
-            }
-        } catch (e: SecurityException) {
-             promise.reject("E_PERMISSION_ERROR", "READ_PHONE_STATE permission missing", e)
-        } catch (e: Exception) {
-            promise.reject("E_SIM_ERROR", "Could not get SIM operator", e)
-        }
+        promise.resolve(deviceState.snapshot.simOperator) // "N/A" when there is no SIM or no name
     }
 
     @ReactMethod
     fun getBatteryDetails(promise: Promise) {
-        try {
-            val batteryManager = reactApplicationContext.getSystemService(Context.BATTERY_SERVICE) as BatteryManager
-            val batteryLevel = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY)
-
-            val intentFilter = IntentFilter(Intent.ACTION_BATTERY_CHANGED)
-            val batteryStatus = reactApplicationContext.registerReceiver(null, intentFilter)
-            val status = batteryStatus?.getIntExtra(BatteryManager.EXTRA_STATUS, -1) ?: -1
-            val isCharging = status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL
-
-            val details = com.facebook.react.bridge.WritableNativeMap()
-            details.putInt("batteryLevel", batteryLevel)
-            details.putBoolean("isCharging", isCharging)
-            promise.resolve(details)
-        } catch (e: Exception) {
-            promise.reject("E_BATTERY_ERROR", "Could not get battery details", e)
-        }
+        val snapshot = deviceState.snapshot
+        val details = com.facebook.react.bridge.WritableNativeMap()
+        details.putInt("batteryLevel", snapshot.batteryLevel)
+        details.putBoolean("isCharging", snapshot.isCharging)
+        promise.resolve(details)
     }
 
     @SuppressLint("MissingPermission") // Permissions are checked on the JS side
@@ -110,4 +88,53 @@ class DeviceDetailsModule(reactContext: ReactApplicationContext) : ReactContextB
                 promise.reject("E_LOCATION_ERROR", "Failed to get location", e)
             }
     }
+
+    /**
+     * Gathers every device detail in one bridge call. The cheap fields come straight from
+     * Build and the DeviceStateCache snapshot; only the location fix runs off the calling
+     * thread, with its own deadline, and is returned as null if it misses it or fails.
+     */
+    @SuppressLint("MissingPermission") // Permissions are checked on the JS side
+    @ReactMethod
+    fun getAll(includeLocation: Boolean, promise: Promise) {
+        executor.execute {
+            val snapshot = deviceState.snapshot
+            val result = com.facebook.react.bridge.WritableNativeMap()
+            result.putString("deviceName", "${Build.MANUFACTURER} ${Build.MODEL}")
+            val isTablet = reactApplicationContext.resources.configuration.smallestScreenWidthDp >= 600
+            result.putString("deviceType", if (isTablet) "Tablet" else "Phone")
+            result.putString("osVersion", "Android " + Build.VERSION.RELEASE)
+            result.putString("ipAddress", snapshot.ipAddress)
+            result.putString("simOperator", snapshot.simOperator)
+            result.putInt("batteryLevel", snapshot.batteryLevel)
+            result.putBoolean("isCharging", snapshot.isCharging)
+
+            if (includeLocation) {
+                val cancellation = CancellationTokenSource()
+                val location = try {
+                    Tasks.await(
+                        fusedLocationClient.getCurrentLocation(Priority.PRIORITY_HIGH_ACCURACY, cancellation.token),
+                        LOCATION_TIMEOUT_MS, TimeUnit.MILLISECONDS
+                    )
+                } catch (e: TimeoutException) {
+                    Log.w(TAG, "Timed out collecting location")
+                    null
+                } catch (e: Exception) {
+                    Log.w(TAG, "Failed to collect location", e)
+                    null
+                } finally {
+                    cancellation.cancel()
+                }
+                if (location != null) {
+                    result.putMap("location", com.facebook.react.bridge.WritableNativeMap().apply {
+                        putDouble("latitude", location.latitude)
+                        putDouble("longitude", location.longitude)
+                    })
+                } else {
+                    result.putNull("location")
+                }
+            }
+            promise.resolve(result)
+        }
+    }
 }
@@ -0,0 +1,179 @@
+package com.guardian.child;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.LinkAddress;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.os.BatteryManager;
+import android.telephony.CarrierConfigManager;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Objects;
+
+/**
+ * Process-wide cache of battery, network and SIM state.
+ *
+ * The cache is populated once and then kept current from broadcasts and network callbacks,
+ * so readers (JS bridge calls, the periodic status upload) get an immutable snapshot from
+ * memory instead of querying system services on every call.
+ */
+public class DeviceStateCache {
+
+    private static final String TAG = "DeviceStateCache";
+    private static final String ACTION_SIM_STATE_CHANGED = "android.intent.action.SIM_STATE_CHANGED";
+
+    public static final class Snapshot {
+        public final int batteryLevel;
+        public final boolean isCharging;
+        public final String ipAddress;
+        /** "N/A" when there is no SIM or it reports no operator name. */
+        public final String simOperator;
+
+        Snapshot(int batteryLevel, boolean isCharging, String ipAddress, String simOperator) {
+            this.batteryLevel = batteryLevel;
+            this.isCharging = isCharging;
+            this.ipAddress = ipAddress;
+            this.simOperator = simOperator;
+        }
+
+        Snapshot withBattery(int level, boolean charging) {
+            return new Snapshot(level, charging, ipAddress, simOperator);
+        }
+
+        Snapshot withIpAddress(String ip) {
+            return new Snapshot(batteryLevel, isCharging, ip, simOperator);
+        }
+
+        Snapshot withSimOperator(String operator) {
+            return new Snapshot(batteryLevel, isCharging, ipAddress, operator);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Snapshot)) return false;
+            Snapshot other = (Snapshot) o;
+            return batteryLevel == other.batteryLevel
+                    && isCharging == other.isCharging
+                    && Objects.equals(ipAddress, other.ipAddress)
+                    && Objects.equals(simOperator, other.simOperator);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(batteryLevel, isCharging, ipAddress, simOperator);
+        }
+    }
+
+    private static DeviceStateCache instance;
+
+    private final Context context;
+    private volatile Snapshot snapshot;
+
+    private DeviceStateCache(Context context) {
+        this.context = context.getApplicationContext();
+        snapshot = new Snapshot(-1, false, "N/A", readSimOperator());
+        registerCallbacks();
+    }
+
+    public static synchronized DeviceStateCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new DeviceStateCache(context);
+        }
+        return instance;
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    private void registerCallbacks() {
+        BroadcastReceiver batteryReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context ctx, Intent intent) {
+                updateBattery(intent);
+            }
+        };
+        // ACTION_BATTERY_CHANGED is sticky, so registering also hands us the current state.
+        Intent current = ContextCompat.registerReceiver(context, batteryReceiver,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED), ContextCompat.RECEIVER_NOT_EXPORTED);
+        if (current != null) updateBattery(current);
+
+        BroadcastReceiver simReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context ctx, Intent intent) {
+                updateSimOperator(readSimOperator());
+            }
+        };
+        // SIM swaps change the operator; a carrier config update can change its display name
+        IntentFilter simFilter = new IntentFilter(ACTION_SIM_STATE_CHANGED);
+        simFilter.addAction(CarrierConfigManager.ACTION_CARRIER_CONFIG_CHANGED);
+        ContextCompat.registerReceiver(context, simReceiver, simFilter, ContextCompat.RECEIVER_NOT_EXPORTED);
+
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        updateIpAddress(ipv4Address(cm.getLinkProperties(cm.getActiveNetwork())));
+        cm.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onLinkPropertiesChanged(@NonNull Network network, @NonNull LinkProperties linkProperties) {
+                updateIpAddress(ipv4Address(linkProperties));
+            }
+
+            @Override
+            public void onLost(@NonNull Network network) {
+                updateIpAddress("N/A");
+            }
+        });
+    }
+
+    // Updates arrive on the main thread and the network callback thread; each one is a
+    // read-modify-write of the snapshot, so they are serialized here.
+    private synchronized void updateIpAddress(String ipAddress) {
+        snapshot = snapshot.withIpAddress(ipAddress);
+    }
+
+    private synchronized void updateSimOperator(String simOperator) {
+        snapshot = snapshot.withSimOperator(simOperator);
+    }
+
+    private synchronized void updateBattery(Intent intent) {
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, 100);
+        int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        int percent = level < 0 || scale <= 0 ? -1 : level * 100 / scale;
+        boolean charging = status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL;
+        snapshot = snapshot.withBattery(percent, charging);
+    }
+
+    // getSimOperatorName needs no runtime permission
+    private String readSimOperator() {
+        try {
+            TelephonyManager telephonyManager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+            String operatorName = telephonyManager.getSimOperatorName();
+            return operatorName == null || operatorName.isEmpty() ? "N/A" : operatorName;
+        } catch (Exception e) {
+            Log.w(TAG, "Could not read SIM operator.", e);
+            return "N/A";
+        }
+    }
+
+    private static String ipv4Address(LinkProperties linkProperties) {
+        if (linkProperties == null) return "N/A";
+        for (LinkAddress linkAddress : linkProperties.getLinkAddresses()) {
+            InetAddress address = linkAddress.getAddress();
+            if (address instanceof Inet4Address && !address.isLoopbackAddress()) {
+                return address.getHostAddress();
+            }
+        }
+        return "N/A";
+    }
+}
@@ -0,0 +1,152 @@
+package com.guardian.child;
+
+import android.util.Log;
+
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.SetOptions;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Aggregates every device-status field (heartbeat, battery, network, ...) into a single
+ * dirty set and writes it to users/{parent}/children/{child} at most once per flush.
+ *
+ * Numeric fields can be given a tolerance so that small fluctuations (e.g. battery moving
+ * by one percent) do not count as a change. When nothing changed, the flush is skipped
+ * entirely unless the keep-alive window has elapsed, in which case only lastSeen is written.
+ */
+public class DeviceStatusWriter {
+
+    private static final String TAG = "DeviceStatusWriter";
+    // Three of GuardianService's 5-minute flushes, so an unchanged status costs a third of the
+    // writes; see presence.ts OFFLINE_AFTER_MS for how this bounds the gap between lastSeen writes
+    private static final long DEFAULT_KEEP_ALIVE_MS = 15 * 60 * 1000; // 15 minutes
+    // Flushes are jittered by up to 10%, so the window is checked with that much slack
+    private static final double KEEP_ALIVE_SLACK = 0.9;
+
+    private static DeviceStatusWriter instance;
+
+    private final FirebaseFirestore db;
+    private final Map<String, Object> pending = new HashMap<>();
+    private final Map<String, Object> lastWritten = new HashMap<>();
+    private final Map<String, Double> tolerances = new HashMap<>();
+    private long keepAliveMs = DEFAULT_KEEP_ALIVE_MS;
+    private long lastFlushAt = 0;
+    private String parentUid;
+    private String childUid;
+
+    private DeviceStatusWriter() {
+        db = FirebaseFirestore.getInstance();
+        tolerances.put("battery", 2.0);
+    }
+
+    public static synchronized DeviceStatusWriter getInstance() {
+        if (instance == null) {
+            instance = new DeviceStatusWriter();
+        }
+        return instance;
+    }
+
+    public synchronized void configure(String parentUid, String childUid) {
+        if (!Objects.equals(this.parentUid, parentUid) || !Objects.equals(this.childUid, childUid)) {
+            // A different target document has nothing in common with what we last wrote.
+            lastWritten.clear();
+            lastFlushAt = 0;
+        }
+        this.parentUid = parentUid;
+        this.childUid = childUid;
+    }
+
+    public synchronized boolean isConfigured() {
+        return parentUid != null && childUid != null;
+    }
+
+    public synchronized void setTolerance(String field, double tolerance) {
+        tolerances.put(field, tolerance);
+    }
+
+    public synchronized void setKeepAliveMs(long keepAliveMs) {
+        this.keepAliveMs = keepAliveMs;
+    }
+
+    public synchronized void update(String field, Object value) {
+        pending.put(field, value);
+    }
+
+    public synchronized void updateAll(Map<String, Object> fields) {
+        pending.putAll(fields);
+    }
+
+    /**
+     * Forces the next flush to write lastSeen even if no other field changed.
+     */
+    public synchronized void touch() {
+        lastFlushAt = 0;
+    }
+
+    public void flush() {
+        final Map<String, Object> changes = new HashMap<>();
+        final String parent;
+        final String child;
+        final long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            if (!isConfigured()) {
+                Log.w(TAG, "Pairing info not set, skipping status flush.");
+                return;
+            }
+            for (Map.Entry<String, Object> entry : pending.entrySet()) {
+                if (hasChanged(entry.getKey(), entry.getValue())) {
+                    changes.put(entry.getKey(), entry.getValue());
+                }
+            }
+            pending.clear();
+
+            if (changes.isEmpty() && now - lastFlushAt < keepAliveMs * KEEP_ALIVE_SLACK) {
+                Log.d(TAG, "No status change beyond tolerance, skipping write.");
+                return;
+            }
+
+            lastWritten.putAll(changes);
+            lastFlushAt = now;
+            parent = parentUid;
+            child = childUid;
+        }
+
+        changes.put("lastSeen", now);
+
+        db.collection("users").document(parent)
+            .collection("children").document(child)
+            .set(changes, SetOptions.merge())
+            .addOnSuccessListener(aVoid -> Log.d(TAG, "Device status written: " + changes.keySet()))
+            .addOnFailureListener(e -> {
+                Log.e(TAG, "Failed to write device status.", e);
+                requeue(changes);
+            });
+    }
+
+    private synchronized void requeue(Map<String, Object> failed) {
+        for (Map.Entry<String, Object> entry : failed.entrySet()) {
+            if ("lastSeen".equals(entry.getKey())) continue;
+            lastWritten.remove(entry.getKey());
+            // Keep any newer value that arrived while the write was in flight.
+            if (!pending.containsKey(entry.getKey())) {
+                pending.put(entry.getKey(), entry.getValue());
+            }
+        }
+        lastFlushAt = 0;
+    }
+
+    private boolean hasChanged(String field, Object value) {
+        if (!lastWritten.containsKey(field)) return true;
+        Object previous = lastWritten.get(field);
+        Double tolerance = tolerances.get(field);
+        if (tolerance != null && value instanceof Number && previous instanceof Number) {
+            double delta = Math.abs(((Number) value).doubleValue() - ((Number) previous).doubleValue());
+            return delta >= tolerance;
+        }
+        return !Objects.equals(previous, value);
+    }
+}
@@ -5,19 +5,42 @@ import com.facebook.react.bridge.ReactContextBaseJavaModule
 import com.facebook.react.bridge.ReactMethod
 import com.facebook.react.bridge.Promise
 import com.facebook.react.bridge.ReadableMap
-import com.google.firebase.firestore.ktx.firestore
-import com.google.firebase.ktx.Firebase
+import com.facebook.react.bridge.Arguments
+import com.facebook.react.modules.core.DeviceEventManagerModule
 import android.util.Log
 
 class FirestoreModule(reactContext: ReactApplicationContext) : ReactContextBaseJavaModule(reactContext) {
 
     override fun getName() = "FirestoreModule"
 
-    private val db = Firebase.firestore
+    companion object {
+        private const val UPLOAD_DROPPED_EVENT = "UploadDropped"
+    }
+
+    private val outbox = UploadOutbox.getInstance(reactContext)
+
+    // Uploads resolve once queued, so records Firestore later rejects are reported as events
+    private val dropListener = UploadOutbox.DropListener { collectionPath, doc, reason ->
+        if (!reactApplicationContext.hasActiveReactInstance()) return@DropListener
+        val event = Arguments.createMap()
+        event.putString("collection", collectionPath)
+        event.putString("doc", doc)
+        event.putString("reason", reason)
+        reactApplicationContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter::class.java)
+            .emit(UPLOAD_DROPPED_EVENT, event)
+    }
+
+    init {
+        outbox.addDropListener(dropListener)
+    }
+
+    override fun invalidate() {
+        outbox.removeDropListener(dropListener)
+        super.invalidate()
+    }
 
     private fun getDeviceId(promise: Promise): String? {
-        val sharedPreferences = reactApplicationContext.getSharedPreferences("GuardianChildPrefs", 0)
-        val deviceId = sharedPreferences.getString("deviceId", null)
+        val deviceId = PairingConfig.getInstance(reactApplicationContext).deviceId
         if (deviceId == null || deviceId.isEmpty()) {
             promise.reject("DEVICE_ID_ERROR", "Device ID is not set")
             return null
@@ -27,26 +50,32 @@ class FirestoreModule(reactContext: ReactApplicationContext) : ReactContextBaseJ
 
     private fun uploadData(collection: String, doc: String? = null, data: Map<String, Any>, promise: Promise, merge: Boolean = false) {
         val deviceId = getDeviceId(promise) ?: return
-        val collectionRef = db.collection("childDevices").document(deviceId).collection(collection)
-
-        val task = if (doc != null) {
-            if (merge) collectionRef.document(doc).set(data, com.google.firebase.firestore.SetOptions.merge()) else collectionRef.document(doc).set(data)
-        } else {
-            collectionRef.add(data)
+        try {
+            // Written to the on-disk outbox first; the outbox commits in batches in the background.
+            // Resolving means "durably queued", not "accepted by Firestore" (see UPLOAD_DROPPED_EVENT).
+            outbox.enqueue("childDevices/$deviceId/$collection", doc, data, merge)
+            promise.resolve("Data queued for upload to $collection")
+        } catch (e: Exception) {
+            promise.reject("FIRESTORE_ERROR", "Error queueing upload to $collection", e)
         }
-
-        task
-            .addOnSuccessListener { promise.resolve("Data uploaded successfully to $collection") }
-            .addOnFailureListener { e -> promise.reject("FIRESTORE_ERROR", "Error uploading to $collection", e) }
     }
 
     @ReactMethod
     fun uploadCommandResult(commandId: String, result: ReadableMap, promise: Promise) {
-        uploadData("responses", commandId, result.toHashMap(), promise)
+        val deviceId = getDeviceId(promise) ?: return
+        // Folded with other results that finish in the same window into one batch
+        CommandResultWriter.putResult(deviceId, commandId, result.toHashMap()) { error ->
+            if (error == null) {
+                promise.resolve("Command result uploaded for $commandId")
+            } else {
+                promise.reject("FIRESTORE_ERROR", "Error uploading command result for $commandId", error)
+            }
+        }
     }
 
     @ReactMethod
     fun uploadHeartbeat(promise: Promise) {
+        // Only the status/latest doc; lastSeen on the children doc belongs to DeviceStatusWriter
         val data = hashMapOf("lastSeen" to System.currentTimeMillis())
         uploadData("status", "latest", data, promise, merge = true)
     }
@@ -63,7 +92,10 @@ class FirestoreModule(reactContext: ReactApplicationContext) : ReactContextBaseJ
 
     @ReactMethod
     fun uploadErrorLog(error: ReadableMap, promise: Promise) {
-        uploadData("errors", null, error.toHashMap(), promise)
+        val errorMap = error.toHashMap()
+        // Read by the server-side retention job
+        errorMap["timestamp"] = System.currentTimeMillis()
+        uploadData("errors", null, errorMap, promise)
     }
     
     @ReactMethod
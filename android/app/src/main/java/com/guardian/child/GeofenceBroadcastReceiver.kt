@@ -5,24 +5,42 @@ import android.content.Context
 import android.content.Intent
 import android.util.Log
 import com.google.android.gms.location.Geofence
+import com.google.android.gms.location.GeofenceStatusCodes
 import com.google.android.gms.location.GeofencingEvent
 
 class GeofenceBroadcastReceiver : BroadcastReceiver() {
     override fun onReceive(context: Context, intent: Intent) {
+        if (intent.action == GeofenceTransitionPipeline.ACTION_FLUSH) {
+            // Settle window is over; the pipeline commits within this receiver's async window
+            GeofenceTransitionPipeline.flush(context, goAsync())
+            return
+        }
+
         val geofencingEvent = GeofencingEvent.fromIntent(intent)
-        if (geofencingEvent.hasError()) {
-            val errorMessage = "Geofencing error: " + geofencingEvent.errorCode
-            Log.e("GeofenceReceiver", errorMessage)
+        if (geofencingEvent == null || geofencingEvent.hasError()) {
+            Log.e("GeofenceReceiver", "Geofencing error: " + geofencingEvent?.errorCode)
+            if (geofencingEvent?.errorCode == GeofenceStatusCodes.GEOFENCE_NOT_AVAILABLE) {
+                // Play Services has dropped every fence; make the next sync re-add them
+                GeofenceManager.clearRegistered(context)
+            }
             return
         }
 
         val geofenceTransition = geofencingEvent.geofenceTransition
-        if (geofenceTransition == Geofence.GEOFENCE_TRANSITION_ENTER ||
-            geofenceTransition == Geofence.GEOFENCE_TRANSITION_EXIT) {
-            // Event को बैकग्राउंड में संभालने के लिए JobIntentService शुरू करें
-            GeofenceTransitionsJobIntentService.enqueueWork(context, intent)
-        } else {
+        if (geofenceTransition != Geofence.GEOFENCE_TRANSITION_ENTER &&
+            geofenceTransition != Geofence.GEOFENCE_TRANSITION_EXIT) {
             Log.e("GeofenceReceiver", "Unknown geofence transition: $geofenceTransition")
+            return
         }
+
+        // Event को बैकग्राउंड पाइपलाइन में भेजें, main thread पर कोई काम नहीं
+        val pendingResult = goAsync()
+        GeofenceTransitionPipeline.submit(
+            context,
+            geofenceTransition,
+            geofencingEvent.triggeringGeofences.orEmpty().map { it.requestId },
+            geofencingEvent.triggeringLocation,
+            pendingResult
+        )
     }
 }
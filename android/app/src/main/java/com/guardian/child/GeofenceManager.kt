@@ -7,10 +7,47 @@ import android.util.Log
 import com.google.android.gms.location.Geofence
 import com.google.android.gms.location.GeofencingRequest
 import com.google.android.gms.location.LocationServices
+import com.google.android.gms.tasks.Task
+import com.google.android.gms.tasks.Tasks
+import org.json.JSONArray
+import org.json.JSONObject
 
 class GeofenceManager(private val context: Context) {
 
+    data class FenceSpec(val id: String, val latitude: Double, val longitude: Double, val radius: Float)
+
+    companion object {
+        private const val TAG = "GeofenceManager"
+        private const val PREFS_NAME = "GeofencePrefs"
+        private const val KEY_REGISTERED = "registeredGeofences"
+        private const val KEY_REGISTERED_AT = "registeredAt"
+        // Play Services can drop fences without telling us (e.g. its data being cleared), so
+        // an unchanged set is still re-added in full once it is this old
+        private const val REFRESH_AFTER_MS = 6 * 60 * 60 * 1000L
+        // Play Services allows at most 100 active geofences per app
+        const val MAX_GEOFENCES = 100
+
+        // Guards the persisted set; shared because GeofenceModule and BootReceiver each hold an instance
+        private val lock = Any()
+        // Syncs run one after another, so each one diffs against what the previous one saved
+        private var syncTail: Task<Void> = Tasks.forResult<Void>(null)
+
+        /**
+         * Forgets the persisted set after Play Services reports GEOFENCE_NOT_AVAILABLE (location
+         * turned off or its data cleared); the fences are gone and the next sync re-adds them all.
+         */
+        fun clearRegistered(context: Context) {
+            synchronized(lock) {
+                context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                    .remove(KEY_REGISTERED)
+                    .remove(KEY_REGISTERED_AT)
+                    .apply()
+            }
+        }
+    }
+
     private val geofencingClient = LocationServices.getGeofencingClient(context)
+    private val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
 
     private val geofencePendingIntent: PendingIntent by lazy {
         val intent = Intent(context, GeofenceBroadcastReceiver::class.java)
@@ -18,38 +55,148 @@ class GeofenceManager(private val context: Context) {
     }
 
     fun addGeofence(geofenceId: String, latitude: Double, longitude: Double, radius: Float) {
-        val geofence = Geofence.Builder()
-            .setRequestId(geofenceId) // पेरेंट ऐप से दी गई ID
-            .setCircularRegion(latitude, longitude, radius)
-            .setExpirationDuration(Geofence.NEVER_EXPIRE) // जियोफेंस कभी एक्सपायर नहीं होगा
-            .setTransitionTypes(Geofence.GEOFENCE_TRANSITION_ENTER or Geofence.GEOFENCE_TRANSITION_EXIT)
-            .build()
-
-        val geofencingRequest = GeofencingRequest.Builder()
-            .setInitialTrigger(GeofencingRequest.INITIAL_TRIGGER_ENTER) // अगर डिवाइस पहले से अंदर है, तो ट्रिगर करें
-            .addGeofence(geofence)
-            .build()
-
+        val spec = FenceSpec(geofenceId, latitude, longitude, radius)
         try {
-            geofencingClient.addGeofences(geofencingRequest, geofencePendingIntent)
-                .addOnSuccessListener { 
-                    Log.d("GeofenceManager", "Geofence added successfully: $geofenceId")
+            register(listOf(spec))
+                .addOnSuccessListener {
+                    Log.d(TAG, "Geofence added successfully: $geofenceId")
+                    updateRegistered { it + (geofenceId to spec) }
                 }
                 .addOnFailureListener { e ->
-                    Log.e("GeofenceManager", "Failed to add geofence: $geofenceId", e)
+                    Log.e(TAG, "Failed to add geofence: $geofenceId", e)
                 }
         } catch (e: SecurityException) {
-            Log.e("GeofenceManager", "SecurityException: Check location permissions.", e)
+            Log.e(TAG, "SecurityException: Check location permissions.", e)
         }
     }
 
     fun removeGeofence(geofenceId: String) {
         geofencingClient.removeGeofences(listOf(geofenceId))
-            .addOnSuccessListener { 
-                 Log.d("GeofenceManager", "Geofence removed successfully: $geofenceId")
+            .addOnSuccessListener {
+                 Log.d(TAG, "Geofence removed successfully: $geofenceId")
+                 updateRegistered { it - geofenceId }
             }
             .addOnFailureListener { e ->
-                Log.e("GeofenceManager", "Failed to remove geofence: $geofenceId", e)
+                Log.e(TAG, "Failed to remove geofence: $geofenceId", e)
+            }
+    }
+
+    /**
+     * Makes the registered geofences match [desired]. The desired set is diffed against the
+     * locally persisted registered set, stale ids are removed in one removeGeofences call and
+     * new or changed fences are added in one GeofencingRequest (re-adding an id replaces it).
+     * Once the persisted set is older than REFRESH_AFTER_MS the whole desired set is re-added.
+     */
+    fun syncGeofences(desired: List<FenceSpec>): Task<Void> {
+        require(desired.size <= MAX_GEOFENCES) { "At most $MAX_GEOFENCES geofences are supported." }
+
+        synchronized(lock) {
+            val result = syncTail.continueWithTask { sync(desired) }
+            syncTail = result.continueWith<Void> { null }
+            return result
+        }
+    }
+
+    private fun sync(desired: List<FenceSpec>): Task<Void> {
+        val registered: Map<String, FenceSpec>
+        val stale: Boolean
+        synchronized(lock) {
+            registered = loadRegistered()
+            stale = System.currentTimeMillis() - prefs.getLong(KEY_REGISTERED_AT, 0) >= REFRESH_AFTER_MS
+        }
+        val desiredById = desired.associateBy { it.id }
+        val toRemove = registered.keys - desiredById.keys
+        val toAdd = if (stale) desired else desired.filter { registered[it.id] != it }
+
+        if (toRemove.isEmpty() && toAdd.isEmpty()) {
+            Log.d(TAG, "Geofences already in sync.")
+            return Tasks.forResult<Void>(null)
+        }
+
+        val removeTask: Task<Void> =
+            if (toRemove.isEmpty()) Tasks.forResult<Void>(null) else geofencingClient.removeGeofences(toRemove.toList())
+
+        return removeTask
+            .onSuccessTask {
+                updateRegistered { it - toRemove }
+                if (toAdd.isEmpty()) Tasks.forResult<Void>(null) else register(toAdd)
+            }
+            .addOnSuccessListener {
+                synchronized(lock) {
+                    saveRegistered(desiredById)
+                    if (stale) prefs.edit().putLong(KEY_REGISTERED_AT, System.currentTimeMillis()).apply()
+                }
+                Log.d(TAG, "Geofences synced: ${toAdd.size} added, ${toRemove.size} removed.")
             }
+            .addOnFailureListener { e -> Log.e(TAG, "Failed to sync geofences.", e) }
+    }
+
+    /**
+     * Play Services drops every geofence on reboot. Re-registers the persisted set in a
+     * single request so the fences come back without a round-trip to the cloud.
+     */
+    fun restoreGeofences() {
+        val registered = synchronized(lock) { loadRegistered() }
+        if (registered.isEmpty()) return
+        try {
+            register(registered.values.toList())
+                .addOnSuccessListener {
+                    prefs.edit().putLong(KEY_REGISTERED_AT, System.currentTimeMillis()).apply()
+                    Log.d(TAG, "Restored ${registered.size} geofences.")
+                }
+                .addOnFailureListener { e -> Log.e(TAG, "Failed to restore geofences.", e) }
+        } catch (e: SecurityException) {
+            Log.e(TAG, "SecurityException: Check location permissions.", e)
+        }
+    }
+
+    private fun register(specs: List<FenceSpec>): Task<Void> {
+        val builder = GeofencingRequest.Builder()
+            .setInitialTrigger(GeofencingRequest.INITIAL_TRIGGER_ENTER) // अगर डिवाइस पहले से अंदर है, तो ट्रिगर करें
+        for (spec in specs) {
+            builder.addGeofence(
+                Geofence.Builder()
+                    .setRequestId(spec.id) // पेरेंट ऐप से दी गई ID
+                    .setCircularRegion(spec.latitude, spec.longitude, spec.radius)
+                    .setExpirationDuration(Geofence.NEVER_EXPIRE) // जियोफेंस कभी एक्सपायर नहीं होगा
+                    .setTransitionTypes(Geofence.GEOFENCE_TRANSITION_ENTER or Geofence.GEOFENCE_TRANSITION_EXIT)
+                    .build()
+            )
+        }
+        return geofencingClient.addGeofences(builder.build(), geofencePendingIntent)
+    }
+
+    private fun updateRegistered(change: (Map<String, FenceSpec>) -> Map<String, FenceSpec>) {
+        synchronized(lock) { saveRegistered(change(loadRegistered())) }
+    }
+
+    // Caller holds the lock
+    private fun loadRegistered(): Map<String, FenceSpec> {
+        val json = prefs.getString(KEY_REGISTERED, null) ?: return emptyMap()
+        val array = JSONArray(json)
+        return (0 until array.length()).map { i ->
+            val item = array.getJSONObject(i)
+            FenceSpec(
+                item.getString("id"),
+                item.getDouble("latitude"),
+                item.getDouble("longitude"),
+                item.getDouble("radius").toFloat()
+            )
+        }.associateBy { it.id }
+    }
+
+    // Caller holds the lock
+    private fun saveRegistered(fences: Map<String, FenceSpec>) {
+        val array = JSONArray()
+        for (spec in fences.values) {
+            array.put(
+                JSONObject()
+                    .put("id", spec.id)
+                    .put("latitude", spec.latitude)
+                    .put("longitude", spec.longitude)
+                    .put("radius", spec.radius.toDouble())
+            )
+        }
+        prefs.edit().putString(KEY_REGISTERED, array.toString()).apply()
     }
 }
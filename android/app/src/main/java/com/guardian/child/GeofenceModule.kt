@@ -4,6 +4,7 @@ import com.facebook.react.bridge.ReactApplicationContext
 import com.facebook.react.bridge.ReactContextBaseJavaModule
 import com.facebook.react.bridge.ReactMethod
 import com.facebook.react.bridge.Promise
+import com.facebook.react.bridge.ReadableArray
 
 class GeofenceModule(reactContext: ReactApplicationContext) : ReactContextBaseJavaModule(reactContext) {
 
@@ -32,4 +33,24 @@ class GeofenceModule(reactContext: ReactApplicationContext) : ReactContextBaseJa
             promise.reject("REMOVE_GEOFENCE_ERROR", "An error occurred while removing the geofence.", e)
         }
     }
+
+    @ReactMethod
+    fun syncGeofences(geofences: ReadableArray, promise: Promise) {
+        try {
+            val desired = (0 until geofences.size()).map { i ->
+                val fence = geofences.getMap(i)
+                GeofenceManager.FenceSpec(
+                    fence.getString("id")!!,
+                    fence.getDouble("latitude"),
+                    fence.getDouble("longitude"),
+                    fence.getDouble("radius").toFloat()
+                )
+            }
+            geofenceManager.syncGeofences(desired)
+                .addOnSuccessListener { promise.resolve("Geofences synced successfully.") }
+                .addOnFailureListener { e -> promise.reject("SYNC_GEOFENCES_ERROR", "An error occurred while syncing geofences.", e) }
+        } catch (e: Exception) {
+            promise.reject("SYNC_GEOFENCES_ERROR", "An error occurred while syncing geofences.", e)
+        }
+    }
 }
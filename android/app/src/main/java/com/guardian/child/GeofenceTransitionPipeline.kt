@@ -0,0 +1,264 @@
+package com.guardian.child
+
+import android.app.AlarmManager
+import android.app.PendingIntent
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import android.content.SharedPreferences
+import android.location.Location
+import android.os.SystemClock
+import android.util.Log
+import com.google.android.gms.location.Geofence
+import com.google.firebase.firestore.GeoPoint
+import com.google.firebase.firestore.ktx.firestore
+import com.google.firebase.ktx.Firebase
+import org.json.JSONObject
+import java.util.Date
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Background pipeline for geofence transitions.
+ *
+ * Transitions are held for a short settle window before being uploaded. An ENTER followed by
+ * an EXIT (or the reverse) for the same fence inside that window cancels out, so a child
+ * walking along a fence edge produces no writes, and a transition matching the last reported
+ * state of a fence is dropped. Whatever survives the window is written in one WriteBatch.
+ *
+ * Pending transitions and the last reported states are persisted, and the flush is driven by
+ * an alarm delivered to GeofenceBroadcastReceiver, so transitions survive the process being
+ * killed once the receiver returns. Each event gets its document id when it is accepted, so a
+ * commit retried after a timeout never writes it twice.
+ */
+object GeofenceTransitionPipeline {
+
+    private const val TAG = "GeofencePipeline"
+    private const val SETTLE_WINDOW_MS = 30_000L
+    // Stays under the receiver's time limit; an unconfirmed commit is retried by the next alarm
+    private const val COMMIT_WAIT_MS = 8_000L
+    private const val RETRY_DELAY_MS = 5 * 60 * 1000L
+    private const val PREFS_NAME = "GeofencePipelinePrefs"
+    private const val KEY_PENDING = "pending"
+    private const val KEY_UNCONFIRMED = "unconfirmed"
+    private const val KEY_LAST_REPORTED = "lastReported"
+    private const val KEY_FLUSH_AT = "flushAt"
+
+    const val ACTION_FLUSH = "com.guardian.child.FLUSH_GEOFENCE_EVENTS"
+
+    private class Transition(
+        val docId: String,
+        val geofenceId: String,
+        val eventType: String,
+        val latitude: Double?,
+        val longitude: Double?,
+        val timestamp: Long
+    ) {
+        fun toJson(): JSONObject = JSONObject()
+            .put("docId", docId)
+            .put("geofenceId", geofenceId)
+            .put("eventType", eventType)
+            .put("latitude", latitude ?: JSONObject.NULL)
+            .put("longitude", longitude ?: JSONObject.NULL)
+            .put("timestamp", timestamp)
+
+        companion object {
+            fun fromJson(json: JSONObject) = Transition(
+                json.getString("docId"),
+                json.getString("geofenceId"),
+                json.getString("eventType"),
+                if (json.isNull("latitude")) null else json.getDouble("latitude"),
+                if (json.isNull("longitude")) null else json.getDouble("longitude"),
+                json.getLong("timestamp")
+            )
+        }
+    }
+
+    private val db = Firebase.firestore
+    private val executor = Executors.newSingleThreadScheduledExecutor()
+
+    // Only touched on the executor thread, and saved to prefs after every change
+    private var loaded = false
+    private val pending = LinkedHashMap<String, Transition>() // by geofence id
+    private val unconfirmed = LinkedHashMap<String, Transition>() // by document id
+    private val lastReported = HashMap<String, String>()
+
+    fun submit(
+        context: Context,
+        transition: Int,
+        geofenceIds: List<String>,
+        location: Location?,
+        pendingResult: BroadcastReceiver.PendingResult
+    ) {
+        val appContext = context.applicationContext
+        val eventType = if (transition == Geofence.GEOFENCE_TRANSITION_ENTER) "ENTER" else "EXIT"
+        val timestamp = System.currentTimeMillis()
+        executor.execute {
+            try {
+                load(appContext)
+                val events = db.collection("devices")
+                for (geofenceId in geofenceIds) {
+                    accept(Transition(events.document().id, geofenceId, eventType, location?.latitude, location?.longitude, timestamp))
+                }
+                save(appContext)
+                if (pending.isNotEmpty()) scheduleFlush(appContext, SETTLE_WINDOW_MS)
+            } catch (e: Exception) {
+                Log.e(TAG, "Failed to queue geofence transition.", e)
+            } finally {
+                pendingResult.finish()
+            }
+        }
+    }
+
+    /** Called by GeofenceBroadcastReceiver when the flush alarm fires. */
+    fun flush(context: Context, pendingResult: BroadcastReceiver.PendingResult) {
+        val appContext = context.applicationContext
+        val finished = AtomicBoolean(false)
+        val finish = { if (finished.compareAndSet(false, true)) pendingResult.finish() }
+        executor.execute {
+            try {
+                if (!commitPending(appContext, finish)) finish()
+            } catch (e: Exception) {
+                Log.e(TAG, "Geofence flush failed.", e)
+                scheduleFlush(appContext, RETRY_DELAY_MS)
+                finish()
+            }
+        }
+    }
+
+    private fun accept(transition: Transition) {
+        val geofenceId = transition.geofenceId
+        val queued = pending[geofenceId]
+        if (queued != null && queued.eventType != transition.eventType) {
+            // ENTER/EXIT flap inside the settle window: neither side is reported
+            pending.remove(geofenceId)
+            Log.d(TAG, "Debounced flapping transitions for $geofenceId")
+            return
+        }
+        if (queued == null && lastReported[geofenceId] == transition.eventType) {
+            return
+        }
+        pending[geofenceId] = transition
+    }
+
+    // Moves settled transitions to the unconfirmed set and commits that set. Returns true if a
+    // commit was started, in which case finish is called once it completes or times out.
+    private fun commitPending(context: Context, finish: () -> Unit): Boolean {
+        load(context)
+        val prefs = prefs(context)
+        prefs.edit().remove(KEY_FLUSH_AT).apply()
+
+        // Transitions still inside their settle window wait for a later alarm
+        val settledBefore = System.currentTimeMillis() - SETTLE_WINDOW_MS
+        val it = pending.values.iterator()
+        while (it.hasNext()) {
+            val transition = it.next()
+            if (transition.timestamp > settledBefore) continue
+            unconfirmed[transition.docId] = transition
+            lastReported[transition.geofenceId] = transition.eventType
+            it.remove()
+        }
+        save(context)
+        if (pending.isNotEmpty()) scheduleFlush(context, SETTLE_WINDOW_MS)
+        if (unconfirmed.isEmpty()) return false
+
+        val childUid = PairingConfig.getInstance(context).childUid
+        if (childUid == null) {
+            Log.w(TAG, "Child UID not found, dropping ${unconfirmed.size} geofence transitions.")
+            unconfirmed.clear()
+            save(context)
+            return false
+        }
+
+        val events = db.collection("devices").document(childUid).collection("geofenceEvents")
+        val batch = db.batch()
+        val sent = ArrayList(unconfirmed.values)
+        for (transition in sent) {
+            val event = hashMapOf<String, Any?>(
+                "geofenceId" to transition.geofenceId,
+                "eventType" to transition.eventType,
+                "timestamp" to Date(transition.timestamp),
+                "location" to if (transition.latitude != null && transition.longitude != null) GeoPoint(transition.latitude, transition.longitude) else null
+            )
+            batch.set(events.document(transition.docId), event)
+        }
+
+        var completed = false
+        batch.commit().addOnCompleteListener(executor) { task ->
+            completed = true
+            if (task.isSuccessful) {
+                for (transition in sent) unconfirmed.remove(transition.docId)
+                save(context)
+                Log.d(TAG, "Uploaded ${sent.size} geofence events in one batch.")
+            } else {
+                Log.e(TAG, "Error writing geofence events to Firestore", task.exception)
+                scheduleFlush(context, RETRY_DELAY_MS)
+            }
+            finish()
+        }
+        executor.schedule({
+            if (!completed) {
+                // Still unacknowledged (e.g. offline); the same document ids are resent later
+                scheduleFlush(context, RETRY_DELAY_MS)
+            }
+            finish()
+        }, COMMIT_WAIT_MS, TimeUnit.MILLISECONDS)
+        return true
+    }
+
+    // An alarm that is already due sooner is kept, so a steady stream of transitions cannot
+    // keep pushing the flush back.
+    private fun scheduleFlush(context: Context, delayMs: Long) {
+        val prefs = prefs(context)
+        val now = System.currentTimeMillis()
+        val flushAt = prefs.getLong(KEY_FLUSH_AT, 0)
+        if (flushAt > now && flushAt <= now + delayMs) return
+        prefs.edit().putLong(KEY_FLUSH_AT, now + delayMs).apply()
+
+        val intent = Intent(context, GeofenceBroadcastReceiver::class.java).setAction(ACTION_FLUSH)
+        val pendingIntent = PendingIntent.getBroadcast(context, 1, intent,
+            PendingIntent.FLAG_UPDATE_CURRENT or PendingIntent.FLAG_IMMUTABLE)
+        val alarmManager = context.getSystemService(Context.ALARM_SERVICE) as AlarmManager
+        alarmManager.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP,
+            SystemClock.elapsedRealtime() + delayMs, pendingIntent)
+    }
+
+    private fun load(context: Context) {
+        if (loaded) return
+        loaded = true
+        val prefs = prefs(context)
+        try {
+            prefs.getString(KEY_PENDING, null)?.let { stored ->
+                val json = JSONObject(stored)
+                for (key in json.keys()) pending[key] = Transition.fromJson(json.getJSONObject(key))
+            }
+            prefs.getString(KEY_UNCONFIRMED, null)?.let { stored ->
+                val json = JSONObject(stored)
+                for (key in json.keys()) unconfirmed[key] = Transition.fromJson(json.getJSONObject(key))
+            }
+            prefs.getString(KEY_LAST_REPORTED, null)?.let { stored ->
+                val json = JSONObject(stored)
+                for (key in json.keys()) lastReported[key] = json.getString(key)
+            }
+        } catch (e: Exception) {
+            Log.e(TAG, "Failed to restore geofence pipeline state.", e)
+        }
+    }
+
+    private fun save(context: Context) {
+        val pendingJson = JSONObject()
+        for ((key, transition) in pending) pendingJson.put(key, transition.toJson())
+        val unconfirmedJson = JSONObject()
+        for ((key, transition) in unconfirmed) unconfirmedJson.put(key, transition.toJson())
+        // commit(), not apply(): the receiver's pending result may finish right after this
+        prefs(context).edit()
+            .putString(KEY_PENDING, pendingJson.toString())
+            .putString(KEY_UNCONFIRMED, unconfirmedJson.toString())
+            .putString(KEY_LAST_REPORTED, JSONObject(lastReported as Map<*, *>).toString())
+            .commit()
+    }
+
+    private fun prefs(context: Context): SharedPreferences =
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+}
@@ -1,88 +1,186 @@
 
 package com.guardian.child;
 
-import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
-import android.net.wifi.WifiManager;
-import android.os.BatteryManager;
+import android.content.pm.ServiceInfo;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
-import android.telephony.TelephonyManager;
-import android.text.format.Formatter;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
+import androidx.core.content.ContextCompat;
 
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.ListenerRegistration;
-import com.google.firebase.firestore.SetOptions;
 import com.guardian.child.webrtc.WebRTCService;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
+/**
+ * The app's only foreground service. It owns the single ongoing notification; subsystems
+ * that need foreground capabilities (screen capture, camera streaming) attach to it as
+ * components, and the service re-promotes itself with the union of their foreground types.
+ */
 public class GuardianService extends Service {
 
+    public static final String COMPONENT_SCREEN = "screen";
+    public static final String COMPONENT_CAMERA = "camera";
+
     private static final String TAG = "GuardianService";
     private static final int NOTIFICATION_ID = 1;
     private static final String CHANNEL_ID = "GuardianServiceChannel";
-    private static final long HEARTBEAT_INTERVAL_MS = 5 * 60 * 1000; // 5 minutes
-    private static final long DEVICE_DETAILS_INTERVAL_MS = 15 * 60 * 1000; // 15 minutes
+    private static final String WEBRTC_OFFER_DOC = "webrtcOffer";
+    private static final String LAST_OFFER_ID_KEY = "lastWebRTCOfferId";
+    private static final long STATUS_FLUSH_INTERVAL_MS = 5 * 60 * 1000; // 5 minutes
+    private static final long FULL_SYNC_INTERVAL_MS = 15 * 60 * 1000; // 15 minutes
+    private static final String ACTION_ATTACH = "com.guardian.child.ATTACH_COMPONENT";
+    private static final String ACTION_DETACH = "com.guardian.child.DETACH_COMPONENT";
+    private static final String EXTRA_COMPONENT = "component";
+
+    // Foreground service type each component needs; the audio track rides along with both streams
+    private static final Map<String, Integer> COMPONENT_TYPES = new HashMap<>();
+    static {
+        COMPONENT_TYPES.put(COMPONENT_SCREEN, ServiceInfo.FOREGROUND_SERVICE_TYPE_MEDIA_PROJECTION | ServiceInfo.FOREGROUND_SERVICE_TYPE_MICROPHONE);
+        COMPONENT_TYPES.put(COMPONENT_CAMERA, ServiceInfo.FOREGROUND_SERVICE_TYPE_CAMERA | ServiceInfo.FOREGROUND_SERVICE_TYPE_MICROPHONE);
+    }
+
+    /** Told once the service holds the component's foreground type, or that promotion failed. */
+    public interface AttachCallback {
+        void onAttached(boolean success);
+    }
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Main thread only: callers waiting for the service to start and attach their component
+    private static final Map<String, List<AttachCallback>> pendingAttachCallbacks = new HashMap<>();
+
+    private static volatile GuardianService instance;
 
     private FirebaseFirestore db;
+    private SharedPreferences prefs;
     private String parentUid;
     private String childUid;
     private ListenerRegistration webrtcListener;
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private DeviceStatusWriter statusWriter;
+    private PeriodicTaskScheduler scheduler;
+    private DeviceStateCache deviceState;
+    private DeviceStateCache.Snapshot lastSyncedSnapshot;
+    private long lastFullSyncAt;
+    private final Map<String, Integer> activeComponents = new LinkedHashMap<>();
+    private RestartSupervisor restartSupervisor;
+    private PairingConfig pairing;
+    private final PairingConfig.Listener pairingListener = config -> new Handler(Looper.getMainLooper()).post(this::onPairingChanged);
+    private long startedAt;
+
+    /**
+     * Attaches a component to the running service, or starts the service with it. Safe to call
+     * from any thread: the work is posted to the main looper, and [callback] runs there only
+     * after startForeground has been called with the component's type, which must be held
+     * before the camera is opened or a MediaProjection is created.
+     */
+    public static void attachComponent(Context context, String component, AttachCallback callback) {
+        Context appContext = context.getApplicationContext();
+        mainHandler.post(() -> {
+            GuardianService service = instance;
+            if (service != null) {
+                callback.onAttached(service.attach(component));
+                return;
+            }
+            List<AttachCallback> waiting = pendingAttachCallbacks.get(component);
+            if (waiting == null) {
+                waiting = new ArrayList<>();
+                pendingAttachCallbacks.put(component, waiting);
+            }
+            waiting.add(callback);
+            try {
+                Intent intent = new Intent(appContext, GuardianService.class).setAction(ACTION_ATTACH).putExtra(EXTRA_COMPONENT, component);
+                ContextCompat.startForegroundService(appContext, intent);
+            } catch (RuntimeException e) {
+                // e.g. a background start the system does not allow
+                Log.e(TAG, "Could not start the service for component " + component, e);
+                notifyAttached(component, false);
+            }
+        });
+    }
+
+    public static void detachComponent(Context context, String component) {
+        mainHandler.post(() -> {
+            GuardianService service = instance;
+            if (service != null) service.detach(component);
+        });
+    }
+
+    // Main thread only
+    private static void notifyAttached(String component, boolean success) {
+        List<AttachCallback> waiting = pendingAttachCallbacks.remove(component);
+        if (waiting == null) return;
+        for (AttachCallback callback : waiting) callback.onAttached(success);
+    }
 
     @Override
     public void onCreate() {
         super.onCreate();
+        instance = this;
         db = FirebaseFirestore.getInstance();
-        SharedPreferences prefs = getSharedPreferences("ChildAppPrefs", Context.MODE_PRIVATE);
-        parentUid = prefs.getString("parentUid", null);
-        childUid = prefs.getString("childUid", null);
+        prefs = getSharedPreferences("ChildAppPrefs", Context.MODE_PRIVATE);
+        pairing = PairingConfig.getInstance(this);
+        parentUid = pairing.getParentUid();
+        childUid = pairing.getChildUid();
+        statusWriter = DeviceStatusWriter.getInstance();
+        statusWriter.configure(parentUid, childUid);
+        pairing.addListener(pairingListener);
+        scheduler = new PeriodicTaskScheduler(this);
+        deviceState = DeviceStateCache.getInstance(this);
+        restartSupervisor = RestartSupervisor.getInstance(this);
+        startedAt = SystemClock.elapsedRealtime();
 
         createNotificationChannel();
-        Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setContentTitle("Guardian Child")
-                .setContentText("Device is protected.")
-                .setSmallIcon(R.mipmap.ic_launcher)
-                .build();
-        startForeground(NOTIFICATION_ID, notification);
+        promote();
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.d(TAG, "GuardianService is starting.");
 
+        String action = intent != null ? intent.getAction() : null;
+        // A null intent is the system re-creating a sticky service after it was killed
+        if (intent == null || RestartSupervisor.ACTION_RESTART.equals(action)) {
+            if (!restartSupervisor.recordRestart()) {
+                stopSelf();
+                return START_NOT_STICKY;
+            }
+        }
+
+        if (ACTION_ATTACH.equals(action)) {
+            String component = intent.getStringExtra(EXTRA_COMPONENT);
+            notifyAttached(component, attach(component));
+        } else if (ACTION_DETACH.equals(action)) {
+            detach(intent.getStringExtra(EXTRA_COMPONENT));
+        }
+
         if (parentUid == null || childUid == null) {
+            if (!activeComponents.isEmpty()) return START_NOT_STICKY;
             Log.e(TAG, "Pairing info not found, stopping service.");
             stopSelf();
             return START_NOT_STICKY;
         }
 
-        // Stop any existing tasks before starting new ones
-        scheduler.shutdownNow();
-        // Re-initialize scheduler after shutdown
-        ScheduledExecutorService newScheduler = Executors.newSingleThreadScheduledExecutor();
-
-        // Schedule periodic tasks
-        newScheduler.scheduleAtFixedRate(this::sendHeartbeat, 0, HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
-        newScheduler.scheduleAtFixedRate(this::uploadDeviceDetails, 5, DEVICE_DETAILS_INTERVAL_MS, TimeUnit.MILLISECONDS); // Start after 5 seconds
+        // Registration is idempotent, so repeated start commands do not stack up timers.
+        // Heartbeat and device details share one coalesced status write.
+        scheduler.register("deviceStatus", STATUS_FLUSH_INTERVAL_MS, 0, this::syncDeviceStatus);
 
         // Start the WebRTC listener
         setupWebRTCListener();
@@ -90,97 +188,150 @@ public class GuardianService extends Service {
         return START_STICKY;
     }
 
+    // Runs on the main thread. Re-points the status writer and the offer listener at the new pairing.
+    private void onPairingChanged() {
+        parentUid = pairing.getParentUid();
+        childUid = pairing.getChildUid();
+        statusWriter.configure(parentUid, childUid);
+        lastSyncedSnapshot = null;
+        lastFullSyncAt = 0;
+        if (pairing.isPaired()) {
+            scheduler.register("deviceStatus", STATUS_FLUSH_INTERVAL_MS, 0, this::syncDeviceStatus);
+            setupWebRTCListener();
+        } else {
+            scheduler.cancel("deviceStatus");
+            if (webrtcListener != null) webrtcListener.remove();
+            webrtcListener = null;
+        }
+    }
+
     private void setupWebRTCListener() {
         if (webrtcListener != null) webrtcListener.remove();
         Log.d(TAG, "Setting up WebRTC listener for parent: " + parentUid + ", child: " + childUid);
 
+        // The offer lives in its own document so status writes to the child document
+        // do not wake this listener.
         webrtcListener = db.collection("users").document(parentUid)
                 .collection("children").document(childUid)
+                .collection("signals").document(WEBRTC_OFFER_DOC)
                 .addSnapshotListener((snapshot, e) -> {
                     if (e != null) {
                         Log.w(TAG, "WebRTC listener failed.", e);
                         return;
                     }
-                    if (snapshot != null && snapshot.exists() && snapshot.getData().containsKey("webrtc_offer")) {
-                         Map<String, String> offerMap = (Map<String, String>) snapshot.getData().get("webrtc_offer");
-                        if (offerMap == null) return;
-
-                        Log.d(TAG, "Received WebRTC offer.");
-                        Intent serviceIntent = new Intent(this, WebRTCService.class);
-                        serviceIntent.setAction("START_CONNECTION");
-                        serviceIntent.putExtra("sdp", offerMap.get("sdp"));
-                        serviceIntent.putExtra("type", offerMap.get("type").toLowerCase());
-                        serviceIntent.putExtra("parentId", parentUid);
-                        serviceIntent.putExtra("childId", childUid);
-                        startService(serviceIntent);
-                    }
-                });
-    }
-
-    private void sendHeartbeat() {
-        Map<String, Object> data = new HashMap<>();
-        data.put("lastSeen", System.currentTimeMillis());
-        data.put("isOnline", true);
+                    if (snapshot == null || !snapshot.exists()) return;
 
-        db.collection("users").document(parentUid)
-            .collection("children").document(childUid)
-            .set(data, SetOptions.merge()) // Use merge to avoid overwriting other fields
-            .addOnSuccessListener(aVoid -> Log.d(TAG, "Heartbeat sent successfully."))
-            .addOnFailureListener(e -> Log.e(TAG, "Failed to send heartbeat.", e));
-    }
+                    String sdp = snapshot.getString("sdp");
+                    String type = snapshot.getString("type");
+                    if (sdp == null || type == null) return;
 
-    private void uploadDeviceDetails() {
-        Map<String, Object> details = new HashMap<>();
-        details.put("osVersion", "Android " + Build.VERSION.RELEASE);
-        details.put("ipAddress", getIpAddress());
-        details.put("battery", getBatteryLevel());
-        details.put("simOperator", getSimOperator());
-        details.put("lastFullSync", System.currentTimeMillis());
+                    // Re-attaching the listener replays the current offer, so only act on new ids
+                    String offerId = snapshot.getString("offerId");
+                    if (offerId == null) offerId = String.valueOf(sdp.hashCode());
+                    if (offerId.equals(prefs.getString(LAST_OFFER_ID_KEY, null))) {
+                        Log.d(TAG, "Ignoring already handled WebRTC offer " + offerId);
+                        return;
+                    }
+                    prefs.edit().putString(LAST_OFFER_ID_KEY, offerId).apply();
 
-         db.collection("users").document(parentUid)
-            .collection("children").document(childUid)
-            .set(details, SetOptions.merge())
-            .addOnSuccessListener(aVoid -> Log.d(TAG, "Device details uploaded successfully."))
-            .addOnFailureListener(e -> Log.e(TAG, "Failed to upload device details.", e));
+                    Log.d(TAG, "Received WebRTC offer " + offerId);
+                    Intent serviceIntent = new Intent(this, WebRTCService.class);
+                    serviceIntent.setAction("START_CONNECTION");
+                    serviceIntent.putExtra("sdp", sdp);
+                    serviceIntent.putExtra("type", type.toLowerCase());
+                    serviceIntent.putExtra("parentId", parentUid);
+                    serviceIntent.putExtra("childId", childUid);
+                    startService(serviceIntent);
+                });
     }
 
-    private int getBatteryLevel() {
-        BatteryManager bm = (BatteryManager) getSystemService(BATTERY_SERVICE);
-        return bm.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
+    private void syncDeviceStatus() {
+        DeviceStateCache.Snapshot snapshot = deviceState.getSnapshot();
+        long now = System.currentTimeMillis();
+        // An unchanged snapshot only needs the writer's keep-alive, not a rebuilt status map,
+        // until the 15-minute full sync (and its lastFullSync stamp) is due
+        if (!snapshot.equals(lastSyncedSnapshot) || now - lastFullSyncAt >= FULL_SYNC_INTERVAL_MS) {
+            Map<String, Object> status = new HashMap<>();
+            status.put("osVersion", "Android " + Build.VERSION.RELEASE);
+            status.put("ipAddress", snapshot.ipAddress);
+            status.put("battery", snapshot.batteryLevel);
+            status.put("simOperator", snapshot.simOperator);
+            status.put("lastFullSync", now);
+            statusWriter.updateAll(status);
+            lastSyncedSnapshot = snapshot;
+            lastFullSyncAt = now;
+        }
+        // Lets the parent dashboard spot devices whose service keeps getting restarted
+        statusWriter.update("restartCount", restartSupervisor.getRestartCount());
+        restartSupervisor.reportUptime(SystemClock.elapsedRealtime() - startedAt);
+        statusWriter.flush();
     }
 
-    private String getIpAddress() {
+    // Main thread only. Returns true once the service is promoted with the component's type.
+    private boolean attach(String component) {
+        Integer type = COMPONENT_TYPES.get(component);
+        if (type == null) {
+            Log.w(TAG, "Unknown component: " + component);
+            return false;
+        }
+        if (activeComponents.put(component, type) != null) return true;
         try {
-            WifiManager wifiManager = (WifiManager) getApplicationContext().getSystemService(Context.WIFI_SERVICE);
-            return Formatter.formatIpAddress(wifiManager.getConnectionInfo().ipAddress);
-        } catch (Exception e) {
-            return "N/A";
+            promote();
+            Log.d(TAG, "Component attached: " + component);
+            return true;
+        } catch (RuntimeException e) {
+            // e.g. a missing permission for the new foreground type
+            Log.e(TAG, "Could not promote for component " + component, e);
+            activeComponents.remove(component);
+            try {
+                promote();
+            } catch (RuntimeException fallback) {
+                // The remaining types cannot be held either; stop rather than crash the main thread
+                Log.e(TAG, "Could not restore foreground state, stopping service", fallback);
+                stopSelf();
+            }
+            return false;
         }
     }
 
-    private String getSimOperator() {
-        try {
-            TelephonyManager telephonyManager = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
-            String operatorName = telephonyManager.getSimOperatorName();
-            return operatorName.isEmpty() ? "N/A" : operatorName;
-        } catch (SecurityException e) {
-            return "Permission Denied";
-        } catch (Exception e) {
-            return "N/A";
+    // Main thread only
+    private void detach(String component) {
+        if (activeComponents.remove(component) != null) {
+            Log.d(TAG, "Component detached: " + component);
+            promote();
+        }
+    }
+
+    // Re-posts the single notification and foreground types to match the attached components.
+    private void promote() {
+        int types = ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC;
+        for (int type : activeComponents.values()) types |= type;
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID).setOngoing(true);
+        if (activeComponents.isEmpty()) {
+            builder.setContentTitle("Guardian Child")
+                    .setContentText("Device is protected.")
+                    .setSmallIcon(R.mipmap.ic_launcher);
+        } else {
+            builder.setContentTitle("Monitoring Active")
+                    .setContentText("Live " + String.join(" and ", activeComponents.keySet()) + " is being shared.")
+                    .setSmallIcon(R.drawable.green_dot);
         }
+        ServiceCompat.startForeground(this, NOTIFICATION_ID, builder.build(), types);
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
+        instance = null;
+        // Anyone still waiting on a start that never attached
+        for (String component : new ArrayList<>(pendingAttachCallbacks.keySet())) notifyAttached(component, false);
+        pairing.removeListener(pairingListener);
         if (webrtcListener != null) webrtcListener.remove();
-        scheduler.shutdownNow();
-        Log.d(TAG, "GuardianService destroyed, scheduling restart.");
+        scheduler.shutdown();
+        Log.d(TAG, "GuardianService destroyed.");
 
-        Intent broadcastIntent = new Intent();
-        broadcastIntent.setAction("restartservice");
-        broadcastIntent.setClass(this, BootReceiver.class);
-        this.sendBroadcast(broadcastIntent);
+        restartSupervisor.onServiceDestroyed(parentUid == null || childUid == null);
     }
 
     @Nullable
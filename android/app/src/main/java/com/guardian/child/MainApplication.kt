@@ -76,6 +76,8 @@ class MainApplication : Application(), ReactApplication {
     }
     loadReactNative(this)
     ApplicationLifecycleDispatcher.onApplicationCreate(this)
+    // Load pairing state once per process (and migrate the legacy prefs files on first run)
+    PairingConfig.getInstance(this)
   }
 
   override fun onConfigurationChanged(newConfig: Configuration) {
@@ -1,4 +1,3 @@
-
 package com.guardian.child
 
 import android.app.admin.DeviceAdminReceiver
@@ -8,9 +7,11 @@ import android.content.Intent
 class MyDeviceAdminReceiver : DeviceAdminReceiver() {
     override fun onEnabled(context: Context, intent: Intent) {
         super.onEnabled(context, intent)
+        PermissionStateService.getInstance(context).refreshDeviceAdmin()
     }
 
     override fun onDisabled(context: Context, intent: Intent) {
         super.onDisabled(context, intent)
+        PermissionStateService.getInstance(context).refreshDeviceAdmin()
     }
 }
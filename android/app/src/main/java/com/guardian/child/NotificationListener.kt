@@ -1,8 +1,6 @@
 
 package com.guardian.child
 
-import android.content.Context
-import android.content.SharedPreferences
 import android.service.notification.NotificationListenerService
 import android.service.notification.StatusBarNotification
 import android.util.Log
@@ -14,22 +12,12 @@ class NotificationListener : NotificationListenerService() {
 
     private val TAG = "NotificationListener"
     private val db = Firebase.firestore
-    private lateinit var prefs: SharedPreferences
-    private var parentUid: String? = null
-    private var childUid: String? = null
+    private lateinit var pairing: PairingConfig
 
     override fun onCreate() {
         super.onCreate()
-        prefs = getSharedPreferences("ChildAppPrefs", Context.MODE_PRIVATE)
-        loadPairingInfo()
-    }
-
-    private fun loadPairingInfo() {
-        parentUid = prefs.getString("parentUid", null)
-        childUid = prefs.getString("childUid", null)
-         if (parentUid == null) parentUid = ChildData.parentUid
-        if (childUid == null) childUid = ChildData.childUid
-        Log.d(TAG, "Loaded pairing info: parentUid=$parentUid, childUid=$childUid")
+        pairing = PairingConfig.getInstance(this)
+        Log.d(TAG, "Loaded pairing info: parentUid=${pairing.parentUid}, childUid=${pairing.childUid}")
     }
 
     override fun onListenerConnected() {
@@ -42,12 +30,11 @@ class NotificationListener : NotificationListenerService() {
 
         if (sbn == null) return
 
+        val parentUid = pairing.parentUid
+        val childUid = pairing.childUid
         if (parentUid == null || childUid == null) {
-            loadPairingInfo() // Attempt to reload info
-            if (parentUid == null || childUid == null) {
-                Log.w(TAG, "Pairing info missing. Cannot log notification.")
-                return
-            }
+            Log.w(TAG, "Pairing info missing. Cannot log notification.")
+            return
         }
 
         val packageName = sbn.packageName
@@ -71,8 +58,8 @@ class NotificationListener : NotificationListenerService() {
             "syncedAt" to Date()
         )
 
-        db.collection("users").document(parentUid!!)
-            .collection("children").document(childUid!!)
+        db.collection("users").document(parentUid)
+            .collection("children").document(childUid)
             .collection("notifications")
             .add(notificationData)
             .addOnSuccessListener { Log.d(TAG, "Notification data saved to Firestore.") }
@@ -0,0 +1,194 @@
+package com.guardian.child;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Single source of truth for pairing state (parent UID, child UID and device id).
+ *
+ * Loaded once per process and held in memory, so hot paths read plain fields. Changes are
+ * written atomically to one file and pushed to subscribers. On first load the values are
+ * migrated out of the SharedPreferences files that used to hold them separately.
+ */
+public class PairingConfig {
+
+    private static final String TAG = "PairingConfig";
+    private static final String FILE_NAME = "pairing_config.json";
+    private static final String[] LEGACY_PREFS = {"ChildAppPrefs", "GuardianChildPrefs", "GuardianChild360Prefs", "ChildPrefs"};
+    private static final String[] KEYS = {"parentUid", "childUid", "deviceId"};
+
+    public interface Listener {
+        void onPairingChanged(PairingConfig config);
+    }
+
+    private static PairingConfig instance;
+
+    private final Context context;
+    private final AtomicFile file;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile String parentUid;
+    private volatile String childUid;
+    private volatile String deviceId;
+
+    private PairingConfig(Context context) {
+        this.context = context.getApplicationContext();
+        this.file = new AtomicFile(new File(this.context.getFilesDir(), FILE_NAME));
+        if (file.getBaseFile().exists()) {
+            load();
+        } else {
+            migrateLegacyPrefs();
+        }
+    }
+
+    public static synchronized PairingConfig getInstance(Context context) {
+        if (instance == null) {
+            instance = new PairingConfig(context);
+        }
+        return instance;
+    }
+
+    public String getParentUid() {
+        return parentUid;
+    }
+
+    public String getChildUid() {
+        return childUid;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public boolean isPaired() {
+        return parentUid != null && childUid != null;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public void setPairing(String parentUid, String childUid) {
+        update(parentUid, childUid, deviceId);
+    }
+
+    public void setDeviceId(String deviceId) {
+        update(parentUid, childUid, deviceId);
+    }
+
+    public void clear() {
+        update(null, null, null);
+    }
+
+    /** Returns the value for one of the pairing keys, or null for any other key. */
+    public String get(String key) {
+        switch (key) {
+            case "parentUid": return parentUid;
+            case "childUid": return childUid;
+            case "deviceId": return deviceId;
+            default: return null;
+        }
+    }
+
+    /** Sets one of the pairing keys. Returns false if the key is not a pairing key. */
+    public boolean set(String key, String value) {
+        switch (key) {
+            case "parentUid": update(value, childUid, deviceId); return true;
+            case "childUid": update(parentUid, value, deviceId); return true;
+            case "deviceId": update(parentUid, childUid, value); return true;
+            default: return false;
+        }
+    }
+
+    /** Sets every pairing key present in the map in one persisted update; other keys are ignored. */
+    public void setAll(Map<String, String> values) {
+        update(values.containsKey("parentUid") ? values.get("parentUid") : parentUid,
+                values.containsKey("childUid") ? values.get("childUid") : childUid,
+                values.containsKey("deviceId") ? values.get("deviceId") : deviceId);
+    }
+
+    public static boolean isPairingKey(String key) {
+        for (String k : KEYS) if (k.equals(key)) return true;
+        return false;
+    }
+
+    private void update(String newParentUid, String newChildUid, String newDeviceId) {
+        synchronized (this) {
+            if (equal(parentUid, newParentUid) && equal(childUid, newChildUid) && equal(deviceId, newDeviceId)) return;
+            parentUid = newParentUid;
+            childUid = newChildUid;
+            deviceId = newDeviceId;
+            persist();
+        }
+        Log.d(TAG, "Pairing changed: parentUid=" + newParentUid + ", childUid=" + newChildUid);
+        for (Listener listener : listeners) {
+            listener.onPairingChanged(this);
+        }
+    }
+
+    private void load() {
+        try {
+            JSONObject json = new JSONObject(new String(file.readFully(), StandardCharsets.UTF_8));
+            parentUid = json.optString("parentUid", null);
+            childUid = json.optString("childUid", null);
+            deviceId = json.optString("deviceId", null);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to read pairing config.", e);
+        }
+    }
+
+    // Caller holds the lock (or is the constructor).
+    private boolean persist() {
+        FileOutputStream out = null;
+        try {
+            JSONObject json = new JSONObject();
+            json.put("parentUid", parentUid);
+            json.put("childUid", childUid);
+            json.put("deviceId", deviceId);
+            out = file.startWrite();
+            out.write(json.toString().getBytes(StandardCharsets.UTF_8));
+            file.finishWrite(out);
+            return true;
+        } catch (Exception e) {
+            if (out != null) file.failWrite(out);
+            Log.e(TAG, "Failed to persist pairing config.", e);
+            return false;
+        }
+    }
+
+    // The first legacy file holding a key wins; the keys are then removed so the old files
+    // cannot drift from this one.
+    private void migrateLegacyPrefs() {
+        for (String name : LEGACY_PREFS) {
+            SharedPreferences prefs = context.getSharedPreferences(name, Context.MODE_PRIVATE);
+            if (parentUid == null) parentUid = prefs.getString("parentUid", null);
+            if (childUid == null) childUid = prefs.getString("childUid", null);
+            if (deviceId == null) deviceId = prefs.getString("deviceId", null);
+        }
+        if (!persist()) return;
+        for (String name : LEGACY_PREFS) {
+            SharedPreferences.Editor editor = context.getSharedPreferences(name, Context.MODE_PRIVATE).edit();
+            for (String key : KEYS) editor.remove(key);
+            editor.apply();
+        }
+        Log.d(TAG, "Migrated pairing config: parentUid=" + parentUid + ", childUid=" + childUid);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,115 @@
+package com.guardian.child;
+
+import android.content.Context;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs named periodic tasks on one owned thread.
+ *
+ * Registering a name that is already scheduled with the same interval only swaps in the new
+ * Runnable and keeps the current schedule, so callers such as Service.onStartCommand can
+ * register unconditionally. Each run is rescheduled with +/-10% jitter, and intervals are
+ * stretched while the battery is low or the device is dozing.
+ */
+public class PeriodicTaskScheduler {
+
+    private static final String TAG = "PeriodicTaskScheduler";
+    private static final double JITTER_FRACTION = 0.1;
+    private static final int LOW_BATTERY_PERCENT = 15;
+    private static final int LOW_BATTERY_MULTIPLIER = 2;
+    private static final int DOZE_MULTIPLIER = 4;
+
+    private static class Task {
+        final String name;
+        final long intervalMs;
+        volatile Runnable work;
+        ScheduledFuture<?> future;
+
+        Task(String name, long intervalMs, Runnable work) {
+            this.name = name;
+            this.intervalMs = intervalMs;
+            this.work = work;
+        }
+    }
+
+    private final Context context;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final Map<String, Task> tasks = new HashMap<>();
+    private final Random random = new Random();
+
+    public PeriodicTaskScheduler(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public synchronized void register(String name, long intervalMs, long initialDelayMs, Runnable work) {
+        Task existing = tasks.get(name);
+        if (existing != null) {
+            if (existing.intervalMs == intervalMs) {
+                // The caller's Runnable may capture newer state than the one it replaces
+                existing.work = work;
+                return;
+            }
+            existing.future.cancel(false);
+        }
+        Task task = new Task(name, intervalMs, work);
+        tasks.put(name, task);
+        task.future = executor.schedule(() -> run(task), initialDelayMs, TimeUnit.MILLISECONDS);
+        Log.d(TAG, "Registered task " + name + " every " + intervalMs + "ms");
+    }
+
+    public synchronized void cancel(String name) {
+        Task task = tasks.remove(name);
+        if (task != null) task.future.cancel(false);
+    }
+
+    public synchronized void shutdown() {
+        for (Task task : tasks.values()) task.future.cancel(false);
+        tasks.clear();
+        executor.shutdownNow();
+    }
+
+    private void run(Task task) {
+        long start = SystemClock.elapsedRealtime();
+        try {
+            task.work.run();
+        } catch (Exception e) {
+            Log.e(TAG, "Task " + task.name + " failed.", e);
+        }
+        long latency = SystemClock.elapsedRealtime() - start;
+
+        synchronized (this) {
+            // The task may have been cancelled or replaced while it was running.
+            if (tasks.get(task.name) != task || executor.isShutdown()) return;
+            long delay = nextDelay(task.intervalMs);
+            task.future = executor.schedule(() -> run(task), delay, TimeUnit.MILLISECONDS);
+            Log.d(TAG, "Task " + task.name + " took " + latency + "ms, next run in " + delay + "ms");
+        }
+    }
+
+    private long nextDelay(long intervalMs) {
+        long adjusted = intervalMs * backoffMultiplier();
+        double jitter = (random.nextDouble() * 2 - 1) * JITTER_FRACTION;
+        return Math.max(0, (long) (adjusted * (1 + jitter)));
+    }
+
+    private int backoffMultiplier() {
+        PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (pm != null && pm.isDeviceIdleMode()) return DOZE_MULTIPLIER;
+
+        DeviceStateCache.Snapshot state = DeviceStateCache.getInstance(context).getSnapshot();
+        if (!state.isCharging && state.batteryLevel >= 0 && state.batteryLevel <= LOW_BATTERY_PERCENT) {
+            return LOW_BATTERY_MULTIPLIER;
+        }
+        return 1;
+    }
+}
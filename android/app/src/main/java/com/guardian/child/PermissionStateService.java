@@ -0,0 +1,173 @@
+package com.guardian.child;
+
+import android.Manifest;
+import android.app.AppOpsManager;
+import android.app.admin.DevicePolicyManager;
+import android.content.ComponentName;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.provider.Settings;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide snapshot of every permission the app depends on.
+ *
+ * Special-access permissions are tracked through change callbacks (AppOps for usage access,
+ * Settings.Secure observers for accessibility and notification access, the device admin
+ * receiver), so readers get the cached map instead of querying the system on every poll.
+ * Runtime permissions have no callback and are refreshed when the app returns to the foreground.
+ */
+public class PermissionStateService {
+
+    private static final String TAG = "PermissionStateService";
+    private static final String ENABLED_NOTIFICATION_LISTENERS = "enabled_notification_listeners";
+
+    public interface Listener {
+        void onPermissionsChanged(Map<String, Boolean> permissions);
+    }
+
+    private static final Map<String, String> RUNTIME_PERMISSIONS = new LinkedHashMap<>();
+    static {
+        RUNTIME_PERMISSIONS.put("Camera", Manifest.permission.CAMERA);
+        RUNTIME_PERMISSIONS.put("Location", Manifest.permission.ACCESS_FINE_LOCATION);
+        RUNTIME_PERMISSIONS.put("Microphone", Manifest.permission.RECORD_AUDIO);
+        RUNTIME_PERMISSIONS.put("CallLog", Manifest.permission.READ_CALL_LOG);
+        RUNTIME_PERMISSIONS.put("Sms", Manifest.permission.READ_SMS);
+        RUNTIME_PERMISSIONS.put("Storage", Manifest.permission.READ_EXTERNAL_STORAGE);
+    }
+
+    private static PermissionStateService instance;
+
+    private final Context context;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private Map<String, Boolean> snapshot = new LinkedHashMap<>();
+
+    private PermissionStateService(Context context) {
+        this.context = context.getApplicationContext();
+        for (Map.Entry<String, String> entry : RUNTIME_PERMISSIONS.entrySet()) {
+            snapshot.put(entry.getKey(), isGranted(entry.getValue()));
+        }
+        snapshot.put("Accessibility", isAccessibilityGranted());
+        snapshot.put("Notification", isNotificationListenerGranted());
+        snapshot.put("DeviceAdmin", isDeviceAdminGranted());
+        snapshot.put("UsageStats", isUsageStatsGranted());
+        startWatching();
+    }
+
+    public static synchronized PermissionStateService getInstance(Context context) {
+        if (instance == null) {
+            instance = new PermissionStateService(context);
+        }
+        return instance;
+    }
+
+    public synchronized Map<String, Boolean> getSnapshot() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(snapshot));
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Re-checks the runtime permissions, which have no change callback. */
+    public void refreshRuntimePermissions() {
+        Map<String, Boolean> updates = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : RUNTIME_PERMISSIONS.entrySet()) {
+            updates.put(entry.getKey(), isGranted(entry.getValue()));
+        }
+        apply(updates);
+    }
+
+    public void refreshDeviceAdmin() {
+        apply(Collections.singletonMap("DeviceAdmin", isDeviceAdminGranted()));
+    }
+
+    private void startWatching() {
+        AppOpsManager appOps = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
+        appOps.startWatchingMode(AppOpsManager.OPSTR_GET_USAGE_STATS, context.getPackageName(),
+                (op, packageName) -> apply(Collections.singletonMap("UsageStats", isUsageStatsGranted())));
+
+        ContentResolver resolver = context.getContentResolver();
+        Handler handler = new Handler(Looper.getMainLooper());
+        ContentObserver accessibilityObserver = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                apply(Collections.singletonMap("Accessibility", isAccessibilityGranted()));
+            }
+        };
+        resolver.registerContentObserver(Settings.Secure.getUriFor(Settings.Secure.ACCESSIBILITY_ENABLED), false, accessibilityObserver);
+        resolver.registerContentObserver(Settings.Secure.getUriFor(Settings.Secure.ENABLED_ACCESSIBILITY_SERVICES), false, accessibilityObserver);
+
+        Uri notificationUri = Settings.Secure.getUriFor(ENABLED_NOTIFICATION_LISTENERS);
+        resolver.registerContentObserver(notificationUri, false, new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                apply(Collections.singletonMap("Notification", isNotificationListenerGranted()));
+            }
+        });
+    }
+
+    private void apply(Map<String, Boolean> updates) {
+        Map<String, Boolean> changed;
+        synchronized (this) {
+            boolean dirty = false;
+            for (Map.Entry<String, Boolean> entry : updates.entrySet()) {
+                if (!entry.getValue().equals(snapshot.get(entry.getKey()))) dirty = true;
+            }
+            if (!dirty) return;
+            Map<String, Boolean> next = new LinkedHashMap<>(snapshot);
+            next.putAll(updates);
+            snapshot = next;
+            changed = Collections.unmodifiableMap(new LinkedHashMap<>(next));
+        }
+        Log.d(TAG, "Permissions changed: " + changed);
+        for (Listener listener : listeners) {
+            listener.onPermissionsChanged(changed);
+        }
+    }
+
+    private boolean isGranted(String permission) {
+        return ContextCompat.checkSelfPermission(context, permission) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private boolean isAccessibilityGranted() {
+        ContentResolver resolver = context.getContentResolver();
+        if (Settings.Secure.getInt(resolver, Settings.Secure.ACCESSIBILITY_ENABLED, 0) != 1) return false;
+        String settingValue = Settings.Secure.getString(resolver, Settings.Secure.ENABLED_ACCESSIBILITY_SERVICES);
+        return settingValue != null && settingValue.contains(context.getPackageName());
+    }
+
+    private boolean isNotificationListenerGranted() {
+        String settingValue = Settings.Secure.getString(context.getContentResolver(), ENABLED_NOTIFICATION_LISTENERS);
+        return settingValue != null && settingValue.contains(context.getPackageName());
+    }
+
+    private boolean isDeviceAdminGranted() {
+        DevicePolicyManager dpm = (DevicePolicyManager) context.getSystemService(Context.DEVICE_POLICY_SERVICE);
+        ComponentName deviceAdmin = new ComponentName(context, MyDeviceAdminReceiver.class);
+        return dpm.isAdminActive(deviceAdmin);
+    }
+
+    private boolean isUsageStatsGranted() {
+        AppOpsManager appOps = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
+        int mode = appOps.checkOpNoThrow(AppOpsManager.OPSTR_GET_USAGE_STATS, Process.myUid(), context.getPackageName());
+        return mode == AppOpsManager.MODE_ALLOWED;
+    }
+}
@@ -1,30 +1,39 @@
 package com.guardian.child;
 
-import android.Manifest;
 import android.app.admin.DevicePolicyManager;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Build;
 import android.provider.Settings;
 import androidx.core.app.ActivityCompat;
-import androidx.core.content.ContextCompat;
 import com.facebook.react.bridge.ActivityEventListener;
+import com.facebook.react.bridge.LifecycleEventListener;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.Arguments;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
 import com.guardian.child.MyDeviceAdminReceiver;
 
-public class PermissionsModule extends ReactContextBaseJavaModule implements ActivityEventListener {
+import java.util.Map;
+
+public class PermissionsModule extends ReactContextBaseJavaModule implements ActivityEventListener, LifecycleEventListener {
+
+    private static final String PERMISSIONS_CHANGED_EVENT = "PermissionsChanged";
+
+    private final PermissionStateService permissionState;
+    private final PermissionStateService.Listener permissionListener = this::emitPermissionsChanged;
 
     public PermissionsModule(ReactApplicationContext reactContext) {
         super(reactContext);
         reactContext.addActivityEventListener(this);
+        reactContext.addLifecycleEventListener(this);
+        permissionState = PermissionStateService.getInstance(reactContext);
+        permissionState.addListener(permissionListener);
     }
 
     @Override
@@ -32,16 +41,32 @@ public class PermissionsModule extends ReactContextBaseJavaModule implements Act
         return "PermissionsModule";
     }
 
+    // Served from the cached snapshot; changes are pushed as PermissionsChanged events
     @ReactMethod
     public void checkAllPermissions(Promise promise) {
-        WritableMap permissions = Arguments.createMap();
-        permissions.putBoolean("Camera", isGranted(Manifest.permission.CAMERA));
-        permissions.putBoolean("Location", isGranted(Manifest.permission.ACCESS_FINE_LOCATION));
-        permissions.putBoolean("Microphone", isGranted(Manifest.permission.RECORD_AUDIO));
-        permissions.putBoolean("Accessibility", isAccessibilityGranted());
-        permissions.putBoolean("DeviceAdmin", isDeviceAdminGranted());
-        permissions.putBoolean("UsageStats", isUsageStatsGranted());
-        promise.resolve(permissions);
+        promise.resolve(toWritableMap(permissionState.getSnapshot()));
+    }
+
+    // Required by NativeEventEmitter
+    @ReactMethod
+    public void addListener(String eventName) {}
+
+    @ReactMethod
+    public void removeListeners(double count) {}
+
+    private void emitPermissionsChanged(Map<String, Boolean> permissions) {
+        ReactApplicationContext reactContext = getReactApplicationContext();
+        if (!reactContext.hasActiveReactInstance()) return;
+        reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit(PERMISSIONS_CHANGED_EVENT, toWritableMap(permissions));
+    }
+
+    private static WritableMap toWritableMap(Map<String, Boolean> permissions) {
+        WritableMap map = Arguments.createMap();
+        for (Map.Entry<String, Boolean> entry : permissions.entrySet()) {
+            map.putBoolean(entry.getKey(), entry.getValue());
+        }
+        return map;
     }
 
     @ReactMethod
@@ -56,39 +81,15 @@ public class PermissionsModule extends ReactContextBaseJavaModule implements Act
             case "UsageStats":
                 requestUsageStatsPermission();
                 break;
+            case "Notification":
+                requestNotificationListenerPermission();
+                break;
             default:
                 openAppSettings();
                 break;
         }
     }
 
-    private boolean isGranted(String permission) {
-        return ContextCompat.checkSelfPermission(getReactApplicationContext(), permission) == PackageManager.PERMISSION_GRANTED;
-    }
-
-    private boolean isAccessibilityGranted() {
-        int accessibilityEnabled = 0;
-        try {
-            accessibilityEnabled = Settings.Secure.getInt(getReactApplicationContext().getContentResolver(), Settings.Secure.ACCESSIBILITY_ENABLED);
-        } catch (Settings.SettingNotFoundException e) { /* Ignored */ }
-        if (accessibilityEnabled == 1) {
-            String settingValue = Settings.Secure.getString(getReactApplicationContext().getContentResolver(), Settings.Secure.ENABLED_ACCESSIBILITY_SERVICES);
-            return settingValue != null && settingValue.contains(getReactApplicationContext().getPackageName());
-        }
-        return false;
-    }
-
-    private boolean isDeviceAdminGranted() {
-        DevicePolicyManager dpm = (DevicePolicyManager) getReactApplicationContext().getSystemService(Context.DEVICE_POLICY_SERVICE);
-        ComponentName deviceAdmin = new ComponentName(getReactApplicationContext(), MyDeviceAdminReceiver.class);
-        return dpm.isAdminActive(deviceAdmin);
-    }
-
-    private boolean isUsageStatsGranted() {
-        // Implementation for checking Usage Stats permission
-        return false; // Placeholder
-    }
-
     @ReactMethod
     public void requestAccessibilityPermission() {
         Intent intent = new Intent(Settings.ACTION_ACCESSIBILITY_SETTINGS);
@@ -113,6 +114,13 @@ public class PermissionsModule extends ReactContextBaseJavaModule implements Act
         getReactApplicationContext().startActivity(intent);
     }
 
+    @ReactMethod
+    public void requestNotificationListenerPermission() {
+        Intent intent = new Intent(Settings.ACTION_NOTIFICATION_LISTENER_SETTINGS);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        getReactApplicationContext().startActivity(intent);
+    }
+
     @ReactMethod
     public void openAppSettings() {
         Intent intent = new Intent(Settings.ACTION_APPLICATION_DETAILS_SETTINGS);
@@ -128,4 +136,23 @@ public class PermissionsModule extends ReactContextBaseJavaModule implements Act
 
     @Override
     public void onNewIntent(Intent intent) {}
+
+    // LifecycleEventListener methods
+    @Override
+    public void onHostResume() {
+        // Runtime permissions may have been changed in system settings while we were away
+        permissionState.refreshRuntimePermissions();
+    }
+
+    @Override
+    public void onHostPause() {}
+
+    @Override
+    public void onHostDestroy() {}
+
+    @Override
+    public void invalidate() {
+        permissionState.removeListener(permissionListener);
+        super.invalidate();
+    }
 }
@@ -0,0 +1,159 @@
+package com.guardian.child;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decides whether and when GuardianService is brought back after it goes away.
+ *
+ * Restarts are scheduled through AlarmManager with exponential backoff instead of being
+ * fired immediately, and once MAX_RESTARTS happen inside CRASH_LOOP_WINDOW_MS the supervisor
+ * gives up until the next boot or a stable run. The lifetime restart count is persisted and
+ * reported in the device status document.
+ */
+public class RestartSupervisor {
+
+    private static final String TAG = "RestartSupervisor";
+    private static final String PREFS_NAME = "RestartSupervisorPrefs";
+    private static final String KEY_RESTART_COUNT = "restartCount";
+    private static final String KEY_RECENT_RESTARTS = "recentRestarts";
+    private static final String KEY_SUSPENDED = "suspended";
+
+    public static final String ACTION_RESTART = "restartservice";
+
+    private static final long BASE_BACKOFF_MS = 5_000;
+    private static final long MAX_BACKOFF_MS = 15 * 60 * 1000;
+    private static final int MAX_RESTARTS = 5;
+    private static final long CRASH_LOOP_WINDOW_MS = 30 * 60 * 1000;
+    private static final long STABLE_UPTIME_MS = 10 * 60 * 1000;
+
+    private static RestartSupervisor instance;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+
+    private RestartSupervisor(Context context) {
+        this.context = context.getApplicationContext();
+        this.prefs = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized RestartSupervisor getInstance(Context context) {
+        if (instance == null) {
+            instance = new RestartSupervisor(context);
+        }
+        return instance;
+    }
+
+    public synchronized long getRestartCount() {
+        return prefs.getLong(KEY_RESTART_COUNT, 0);
+    }
+
+    /**
+     * Records that the service came back through a restart (the supervisor's alarm or the
+     * system redelivering a sticky start). Returns false if this restart completes a crash
+     * loop, in which case the service should not keep running.
+     */
+    public synchronized boolean recordRestart() {
+        long count = getRestartCount() + 1;
+        long[] recent = appendRecent(SystemClock.elapsedRealtime());
+        boolean looping = recent.length >= MAX_RESTARTS;
+        prefs.edit()
+                .putLong(KEY_RESTART_COUNT, count)
+                .putString(KEY_RECENT_RESTARTS, join(recent))
+                .putBoolean(KEY_SUSPENDED, looping)
+                .apply();
+        if (looping) {
+            Log.e(TAG, "Crash loop detected: " + recent.length + " restarts within " + CRASH_LOOP_WINDOW_MS + "ms, giving up.");
+        }
+        return !looping;
+    }
+
+    /** Called periodically while the service runs; a long enough run resets the backoff. */
+    public synchronized void reportUptime(long uptimeMs) {
+        if (uptimeMs >= STABLE_UPTIME_MS && prefs.contains(KEY_RECENT_RESTARTS)) {
+            prefs.edit().remove(KEY_RECENT_RESTARTS).putBoolean(KEY_SUSPENDED, false).apply();
+        }
+    }
+
+    /** A reboot is a clean slate for backoff and crash-loop tracking. */
+    public synchronized void onBoot() {
+        prefs.edit().remove(KEY_RECENT_RESTARTS).remove(KEY_SUSPENDED).apply();
+    }
+
+    /**
+     * Called from GuardianService.onDestroy. Schedules a restart unless it would be pointless.
+     * The host only stops itself on purpose when pairing is missing or after a crash loop;
+     * stopping streams from JS detaches components and leaves the host running.
+     */
+    public synchronized void onServiceDestroyed(boolean pairingMissing) {
+        if (pairingMissing) {
+            Log.d(TAG, "Service stopped without pairing, not restarting.");
+            return;
+        }
+        if (prefs.getBoolean(KEY_SUSPENDED, false)) {
+            Log.w(TAG, "Restarts suspended after a crash loop.");
+            return;
+        }
+
+        int recent = readRecent().length;
+        long delay = Math.min(BASE_BACKOFF_MS << Math.min(recent, 20), MAX_BACKOFF_MS);
+        scheduleRestart(delay);
+    }
+
+    private void scheduleRestart(long delayMs) {
+        Intent intent = new Intent(context, BootReceiver.class).setAction(ACTION_RESTART);
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(context, 0, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        long triggerAt = SystemClock.elapsedRealtime() + delayMs;
+
+        // Only exact alarms may start a foreground service from the background on Android 12+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S || alarmManager.canScheduleExactAlarms()) {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAt, pendingIntent);
+        } else {
+            alarmManager.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAt, pendingIntent);
+        }
+        Log.d(TAG, "Restart scheduled in " + delayMs + "ms");
+    }
+
+    // Restart times (elapsed realtime) that are still inside the crash-loop window.
+    private long[] readRecent() {
+        String stored = prefs.getString(KEY_RECENT_RESTARTS, "");
+        long cutoff = SystemClock.elapsedRealtime() - CRASH_LOOP_WINDOW_MS;
+        List<Long> recent = new ArrayList<>();
+        for (String value : stored.split(",")) {
+            if (value.isEmpty()) continue;
+            long timestamp = Long.parseLong(value);
+            if (timestamp >= cutoff) recent.add(timestamp);
+        }
+        long[] result = new long[recent.size()];
+        for (int i = 0; i < result.length; i++) result[i] = recent.get(i);
+        return result;
+    }
+
+    private long[] appendRecent(long timestamp) {
+        long[] recent = readRecent();
+        long[] updated = Arrays.copyOf(recent, recent.length + 1);
+        updated[recent.length] = timestamp;
+        return updated;
+    }
+
+    private static String join(long[] values) {
+        StringBuilder sb = new StringBuilder();
+        for (long value : values) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+}
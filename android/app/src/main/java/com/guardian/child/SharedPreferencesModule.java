@@ -1,19 +1,34 @@
-
 package com.guardian.child;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableMapKeySetIterator;
+import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.HashMap;
+import java.util.Map;
 
 public class SharedPreferencesModule extends ReactContextBaseJavaModule {
 
     private static final String PREFS_NAME = "GuardianChild360Prefs";
+    // Companion key marking a value stored as the raw bits of a double (see multiSet)
+    private static final String DOUBLE_MARKER = ":double";
+
+    private final SharedPreferences sharedPreferences;
+    private final PairingConfig pairing;
 
     public SharedPreferencesModule(ReactApplicationContext reactContext) {
         super(reactContext);
+        sharedPreferences = reactContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        pairing = PairingConfig.getInstance(reactContext);
     }
 
     @Override
@@ -21,18 +36,132 @@ public class SharedPreferencesModule extends ReactContextBaseJavaModule {
         return "SharedPreferencesModule";
     }
 
+    // Pairing keys live in PairingConfig so native services and JS always see the same values
     @ReactMethod
     public void setString(String key, String value) {
-        SharedPreferences sharedPreferences = getReactApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putString(key, value);
-        editor.apply();
+        if (pairing.set(key, value)) return;
+        sharedPreferences.edit().putString(key, value).remove(key + DOUBLE_MARKER).apply();
     }
 
     @ReactMethod
     public void getString(String key, Promise promise) {
-        SharedPreferences sharedPreferences = getReactApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        String value = sharedPreferences.getString(key, null);
-        promise.resolve(value);
+        if (PairingConfig.isPairingKey(key)) {
+            promise.resolve(pairing.get(key));
+            return;
+        }
+        Object value = readValue(key);
+        promise.resolve(value != null ? String.valueOf(value) : null);
+    }
+
+    /**
+     * Resolves with a map of every requested key to its stored value, keeping the stored type
+     * (boolean, number or string). Missing keys map to null.
+     */
+    @ReactMethod
+    public void multiGet(ReadableArray keys, Promise promise) {
+        WritableMap result = Arguments.createMap();
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.getString(i);
+            Object value = PairingConfig.isPairingKey(key) ? pairing.get(key) : readValue(key);
+            if (value instanceof Boolean) {
+                result.putBoolean(key, (Boolean) value);
+            } else if (value instanceof Number) {
+                result.putDouble(key, ((Number) value).doubleValue());
+            } else if (value instanceof String) {
+                result.putString(key, (String) value);
+            } else {
+                result.putNull(key);
+            }
+        }
+        promise.resolve(result);
+    }
+
+    /**
+     * Writes every entry of the map with a single editor apply(). Booleans and strings are
+     * stored as such, integral numbers as long and other numbers as the raw bits of the double
+     * (so they read back exactly); null removes the key.
+     * Every entry is validated before anything is written, so a rejected call changes nothing.
+     * Pairing keys only accept strings or null.
+     */
+    @ReactMethod
+    public void multiSet(ReadableMap values, Promise promise) {
+        try {
+            Map<String, String> pairingValues = new HashMap<>();
+            SharedPreferences.Editor editor = sharedPreferences.edit();
+            ReadableMapKeySetIterator iterator = values.keySetIterator();
+            while (iterator.hasNextKey()) {
+                String key = iterator.nextKey();
+                ReadableType type = values.getType(key);
+                if (PairingConfig.isPairingKey(key)) {
+                    if (type != ReadableType.String && type != ReadableType.Null) {
+                        promise.reject("E_INVALID_VALUE", "Pairing key " + key + " must be a string or null.");
+                        return;
+                    }
+                    pairingValues.put(key, type == ReadableType.Null ? null : values.getString(key));
+                    continue;
+                }
+                switch (type) {
+                    case Boolean:
+                        editor.putBoolean(key, values.getBoolean(key));
+                        break;
+                    case Number:
+                        double number = values.getDouble(key);
+                        if (number == Math.rint(number) && !Double.isInfinite(number)) {
+                            editor.putLong(key, (long) number);
+                        } else {
+                            editor.putLong(key, Double.doubleToRawLongBits(number));
+                            editor.putBoolean(key + DOUBLE_MARKER, true);
+                            continue;
+                        }
+                        break;
+                    case String:
+                        editor.putString(key, values.getString(key));
+                        break;
+                    case Null:
+                        editor.remove(key);
+                        break;
+                    default:
+                        promise.reject("E_INVALID_VALUE", "Unsupported value type for key " + key + "; serialize objects to JSON first.");
+                        return;
+                }
+                editor.remove(key + DOUBLE_MARKER);
+            }
+            // Nothing is written until every entry has passed validation
+            editor.apply();
+            if (!pairingValues.isEmpty()) pairing.setAll(pairingValues);
+            promise.resolve(true);
+        } catch (Exception e) {
+            promise.reject("E_PREFS_ERROR", e.getMessage(), e);
+        }
+    }
+
+    // Typed lookup of a single key, so reads do not copy the whole prefs map. Values written by
+    // this module are strings, longs, booleans or double bits; older builds also stored floats.
+    private Object readValue(String key) {
+        if (!sharedPreferences.contains(key)) return null;
+        if (sharedPreferences.getBoolean(key + DOUBLE_MARKER, false)) {
+            return Double.longBitsToDouble(sharedPreferences.getLong(key, 0));
+        }
+        try {
+            return sharedPreferences.getString(key, null);
+        } catch (ClassCastException ignored) {
+        }
+        try {
+            return sharedPreferences.getLong(key, 0);
+        } catch (ClassCastException ignored) {
+        }
+        try {
+            return sharedPreferences.getBoolean(key, false);
+        } catch (ClassCastException ignored) {
+        }
+        try {
+            return sharedPreferences.getFloat(key, 0);
+        } catch (ClassCastException ignored) {
+        }
+        try {
+            return sharedPreferences.getInt(key, 0);
+        } catch (ClassCastException ignored) {
+        }
+        return null;
     }
 }
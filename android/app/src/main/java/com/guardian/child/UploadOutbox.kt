@@ -0,0 +1,302 @@
+package com.guardian.child
+
+import android.content.Context
+import android.net.ConnectivityManager
+import android.net.NetworkCapabilities
+import android.util.AtomicFile
+import android.util.Log
+import com.google.android.gms.tasks.Task
+import com.google.android.gms.tasks.Tasks
+import com.google.firebase.firestore.FirebaseFirestoreException
+import com.google.firebase.firestore.SetOptions
+import com.google.firebase.firestore.ktx.firestore
+import com.google.firebase.ktx.Firebase
+import org.json.JSONArray
+import org.json.JSONObject
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+/**
+ * Append-only, file-backed queue of Firestore writes.
+ *
+ * Every record is written to disk before the caller returns, so queued uploads survive
+ * process death. A single background thread drains the queue in WriteBatch commits of up
+ * to 500 records and backs off exponentially while the device is offline or commits fail.
+ * Document ids are assigned at enqueue time, so retrying a batch (including one the SDK
+ * already committed after a timeout) never duplicates data. Records that cannot be parsed
+ * (e.g. a line torn by a crash) are dropped rather than blocking the queue. A chunk that
+ * Firestore rejects outright is bisected so only the offending records are dropped; every
+ * dropped record is appended to a dead-letter file and reported to drop listeners.
+ */
+class UploadOutbox private constructor(private val context: Context) {
+
+    companion object {
+        private const val TAG = "UploadOutbox"
+        private const val FILE_NAME = "firestore_outbox.log"
+        private const val DROPPED_FILE_NAME = "firestore_outbox_dropped.log"
+        private const val MAX_DROPPED_BYTES = 256 * 1024L
+        private const val MAX_BATCH_SIZE = 500
+        private const val DRAIN_DELAY_MS = 2_000L
+        private const val BASE_BACKOFF_MS = 5_000L
+        private const val MAX_BACKOFF_MS = 10 * 60 * 1000L
+        private const val COMMIT_TIMEOUT_MS = 60_000L
+        private val PERMANENT_ERRORS = setOf(
+            FirebaseFirestoreException.Code.PERMISSION_DENIED,
+            FirebaseFirestoreException.Code.INVALID_ARGUMENT
+        )
+
+        @Volatile
+        private var instance: UploadOutbox? = null
+
+        fun getInstance(context: Context): UploadOutbox =
+            instance ?: synchronized(this) {
+                instance ?: UploadOutbox(context.applicationContext).also { instance = it }
+            }
+    }
+
+    /** Told about every record the outbox gives up on. Called on the outbox thread. */
+    fun interface DropListener {
+        fun onDropped(collectionPath: String?, doc: String?, reason: String)
+    }
+
+    // index is the record's position in the chunk it was read from
+    private class Record(val index: Int, val line: String, val path: String, val doc: String, val data: Map<String, Any?>, val merge: Boolean)
+
+    private class PermanentFailure(cause: Throwable) : Exception(cause)
+
+    private val db = Firebase.firestore
+    private val file = File(context.filesDir, FILE_NAME)
+    private val droppedFile = File(context.filesDir, DROPPED_FILE_NAME)
+    private val dropListeners = CopyOnWriteArrayList<DropListener>()
+    private val executor = Executors.newSingleThreadScheduledExecutor()
+    private val lock = Any()
+    private val queue = ArrayDeque<String>()
+    private var scheduledDrain: ScheduledFuture<*>? = null
+    // Kept open between appends; closed whenever persistQueue() replaces the file
+    private var appendStream: FileOutputStream? = null
+    private var backoffMs = BASE_BACKOFF_MS
+
+    init {
+        synchronized(lock) {
+            if (file.exists()) {
+                file.forEachLine { line -> if (line.isNotBlank()) queue.addLast(line) }
+            }
+            if (queue.isNotEmpty()) {
+                Log.d(TAG, "Recovered ${queue.size} pending uploads from disk.")
+                // Rewrites the log with clean line endings, so a torn last line cannot swallow the next append
+                persistQueue()
+                scheduleDrain(0)
+            }
+        }
+    }
+
+    /**
+     * Queues a write of [data] to [collectionPath]/[doc]. When [doc] is null a new document
+     * id is generated, mirroring CollectionReference.add().
+     */
+    fun enqueue(collectionPath: String, doc: String?, data: Map<String, Any?>, merge: Boolean = false) {
+        val record = JSONObject()
+            .put("path", collectionPath)
+            .put("doc", doc ?: db.collection(collectionPath).document().id)
+            .put("merge", merge)
+            .put("data", JSONObject(data))
+        val line = record.toString()
+
+        val stream = synchronized(lock) {
+            val out = appendStream ?: FileOutputStream(file, true).also { appendStream = it }
+            out.write((line + "\n").toByteArray())
+            queue.addLast(line)
+            scheduleDrain(DRAIN_DELAY_MS)
+            out
+        }
+        // Synced outside the lock so producers do not queue up behind each other's fsync
+        try {
+            stream.fd.sync()
+        } catch (e: IOException) {
+            // The file was compacted meanwhile, and compaction syncs the new file itself
+            Log.d(TAG, "Outbox append stream replaced before sync.")
+        }
+    }
+
+    fun pendingCount(): Int = synchronized(lock) { queue.size }
+
+    fun addDropListener(listener: DropListener) {
+        dropListeners.addIfAbsent(listener)
+    }
+
+    fun removeDropListener(listener: DropListener) {
+        dropListeners.remove(listener)
+    }
+
+    // Caller holds the lock. A non-null future means a drain is pending or running.
+    private fun scheduleDrain(delayMs: Long) {
+        if (scheduledDrain != null) return
+        scheduledDrain = executor.schedule(::drain, delayMs, TimeUnit.MILLISECONDS)
+    }
+
+    // Always leaves either a follow-up drain scheduled or scheduledDrain cleared, so one bad
+    // run can never stop the outbox for good.
+    private fun drain() {
+        var backOff = true
+        try {
+            backOff = !drainPending()
+        } catch (e: Exception) {
+            Log.e(TAG, "Outbox drain stopped by an unexpected error.", e)
+        } finally {
+            synchronized(lock) {
+                scheduledDrain = null
+                if (backOff) {
+                    Log.d(TAG, "Retrying drain in ${backoffMs}ms.")
+                    scheduledDrain = executor.schedule(::drain, backoffMs, TimeUnit.MILLISECONDS)
+                    backoffMs = (backoffMs * 2).coerceAtMost(MAX_BACKOFF_MS)
+                } else if (queue.isNotEmpty()) {
+                    // Records enqueued while the last chunk was committing
+                    scheduleDrain(0)
+                }
+            }
+        }
+    }
+
+    // Commits queued records until the queue is empty (true) or a retry is needed (false).
+    private fun drainPending(): Boolean {
+        if (!isOnline()) {
+            Log.d(TAG, "Offline, postponing drain.")
+            return false
+        }
+
+        while (true) {
+            val chunk = synchronized(lock) { queue.take(MAX_BATCH_SIZE) }
+            if (chunk.isEmpty()) return true
+
+            val records = ArrayList<Record>(chunk.size)
+            for ((index, line) in chunk.withIndex()) {
+                try {
+                    val json = JSONObject(line)
+                    records.add(Record(index, line, json.getString("path"), json.getString("doc"),
+                        toMap(json.getJSONObject("data")), json.optBoolean("merge")))
+                } catch (e: Exception) {
+                    Log.e(TAG, "Dropping unreadable outbox record.", e)
+                    drop(line, null, null, "unreadable record")
+                }
+            }
+
+            // Records are settled (committed or dropped) in queue order, so after a transient
+            // failure everything before the first unsettled record can leave the queue
+            var settled = 0
+            val complete = try {
+                commit(records) { settled += it }
+                true
+            } catch (e: Exception) {
+                Log.e(TAG, "Batch commit of ${records.size} records failed.", e)
+                false
+            }
+
+            val removable = if (settled == records.size) chunk.size else records[settled].index
+            synchronized(lock) {
+                repeat(removable) { queue.removeFirst() }
+                persistQueue()
+            }
+            if (!complete) return false
+            backoffMs = BASE_BACKOFF_MS
+            Log.d(TAG, "Settled batch of ${chunk.size} records.")
+        }
+    }
+
+    // Commits records in one batch. When Firestore rejects the batch as a whole, each half is
+    // retried on its own until the rejected records are isolated and dropped. Transient
+    // failures propagate so the caller backs off. onSettled gets the number of records
+    // committed or dropped, in order.
+    private fun commit(records: List<Record>, onSettled: (Int) -> Unit) {
+        if (records.isEmpty()) return
+        try {
+            val batch = db.batch()
+            for (record in records) {
+                val ref = db.collection(record.path).document(record.doc)
+                if (record.merge) batch.set(ref, record.data, SetOptions.merge()) else batch.set(ref, record.data)
+            }
+            awaitCommit(batch.commit())
+            onSettled(records.size)
+        } catch (e: PermanentFailure) {
+            if (records.size == 1) {
+                val record = records[0]
+                Log.e(TAG, "Dropping record for ${record.path}/${record.doc} rejected by Firestore.", e.cause)
+                drop(record.line, record.path, record.doc, e.cause?.message ?: "rejected")
+                onSettled(1)
+                return
+            }
+            val middle = records.size / 2
+            commit(records.subList(0, middle), onSettled)
+            commit(records.subList(middle, records.size), onSettled)
+        }
+    }
+
+    private fun awaitCommit(task: Task<Void>) {
+        try {
+            Tasks.await(task, COMMIT_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+        } catch (e: ExecutionException) {
+            val cause = e.cause
+            // Retrying can never succeed; the caller isolates the offending records
+            if (cause is FirebaseFirestoreException && cause.code in PERMANENT_ERRORS) throw PermanentFailure(cause)
+            throw e
+        }
+    }
+
+    // Keeps a bounded dead-letter log of dropped records and tells the listeners.
+    private fun drop(line: String, path: String?, doc: String?, reason: String) {
+        try {
+            if (droppedFile.length() > MAX_DROPPED_BYTES) droppedFile.delete()
+            val entry = JSONObject()
+                .put("droppedAt", System.currentTimeMillis())
+                .put("reason", reason)
+                .put("record", line)
+            droppedFile.appendText(entry.toString() + "\n")
+        } catch (e: Exception) {
+            Log.e(TAG, "Failed to record dropped outbox entry.", e)
+        }
+        for (listener in dropListeners) listener.onDropped(path, doc, reason)
+    }
+
+    // Compacts the log down to the records that are still pending. Caller holds the lock.
+    private fun persistQueue() {
+        try {
+            appendStream?.close()
+        } catch (e: IOException) {
+            Log.w(TAG, "Failed to close outbox append stream.", e)
+        }
+        appendStream = null
+        val atomicFile = AtomicFile(file)
+        val out = atomicFile.startWrite()
+        try {
+            for (line in queue) out.write((line + "\n").toByteArray())
+            atomicFile.finishWrite(out)
+        } catch (e: Exception) {
+            atomicFile.failWrite(out)
+            Log.e(TAG, "Failed to compact outbox file.", e)
+        }
+    }
+
+    private fun isOnline(): Boolean {
+        val cm = context.getSystemService(Context.CONNECTIVITY_SERVICE) as ConnectivityManager
+        val capabilities = cm.getNetworkCapabilities(cm.activeNetwork) ?: return false
+        return capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+    }
+
+    private fun toMap(json: JSONObject): Map<String, Any?> {
+        val map = HashMap<String, Any?>()
+        for (key in json.keys()) map[key] = fromJson(json.get(key))
+        return map
+    }
+
+    private fun fromJson(value: Any?): Any? = when (value) {
+        JSONObject.NULL -> null
+        is JSONObject -> toMap(value)
+        is JSONArray -> (0 until value.length()).map { fromJson(value.get(it)) }
+        else -> value
+    }
+}
@@ -1,17 +1,47 @@
 package com.guardian.child;
 
 import android.app.AppOpsManager;
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageStatsManager;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
 import android.os.Process;
 import android.provider.Settings;
+import android.util.Log;
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class UsageStatsModule extends ReactContextBaseJavaModule {
 
+    private static final String TAG = "UsageStatsModule";
+    private static final String PREFS_NAME = "UsageStatsPrefs";
+    private static final String KEY_CURSOR = "cursor";
+    private static final String KEY_OPEN = "openPackages";
+    private static final String KEY_PENDING_START = "pendingStart";
+    private static final String KEY_PENDING_CURSOR = "pendingCursor";
+    private static final String KEY_PENDING_OPEN = "pendingOpenPackages";
+    private static final String KEY_PENDING_AT = "pendingAt";
+    // How long an unacknowledged window blocks the next one before it is considered abandoned
+    private static final long PENDING_LEASE_MS = 2 * 60 * 1000L;
+
+    // Serializes window reads and acknowledgements against the prefs below
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
     public UsageStatsModule(ReactApplicationContext reactContext) {
         super(reactContext);
     }
@@ -23,14 +53,204 @@ public class UsageStatsModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void checkUsageStatsPermission(Promise promise) {
-        AppOpsManager appOps = (AppOpsManager) getReactApplicationContext().getSystemService(Context.APP_OPS_SERVICE);
-        int mode = appOps.checkOpNoThrow(AppOpsManager.OPSTR_GET_USAGE_STATS, Process.myUid(), getReactApplicationContext().getPackageName());
-        promise.resolve(mode == AppOpsManager.MODE_ALLOWED);
+        promise.resolve(hasUsageStatsPermission());
     }
 
     @ReactMethod
     public void requestUsageStatsPermission() {
         Intent intent = new Intent(Settings.ACTION_USAGE_ACCESS_SETTINGS);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
         getReactApplicationContext().startActivity(intent);
     }
+
+    /**
+     * Resolves with { usageStats, hourlyUsage, token }: the foreground time per package, in ms,
+     * accumulated since the last acknowledged window, the same time split into local
+     * "<day>_<hour>" cells, and the window's end cursor. Only packages with a
+     * non-zero delta are returned. The window stays pending until acknowledgeUsageStats(token)
+     * commits it, so a failed upload is simply recomputed on the next call. While a window is
+     * pending (for up to PENDING_LEASE_MS) further calls are rejected with E_WINDOW_PENDING,
+     * so two overlapping callers never upload the same usage.
+     */
+    @ReactMethod
+    public void getUsageStats(Promise promise) {
+        if (!hasUsageStatsPermission()) {
+            promise.reject("E_PERMISSION_DENIED", "Usage access permission is not granted.");
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                SharedPreferences prefs = getPrefs();
+                if (prefs.contains(KEY_PENDING_CURSOR)
+                        && System.currentTimeMillis() - prefs.getLong(KEY_PENDING_AT, 0) < PENDING_LEASE_MS) {
+                    promise.reject("E_WINDOW_PENDING", "The previous usage window has not been acknowledged yet.");
+                    return;
+                }
+                promise.resolve(collectDeltas(prefs));
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to read usage events", e);
+                promise.reject("E_USAGE_STATS_ERROR", e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Commits the window identified by token, if it is still the pending window and still
+     * starts at the committed cursor. Resolves false for a stale or superseded token.
+     */
+    @ReactMethod
+    public void acknowledgeUsageStats(double token, Promise promise) {
+        executor.execute(() -> {
+            SharedPreferences prefs = getPrefs();
+            boolean current = prefs.contains(KEY_PENDING_CURSOR)
+                && prefs.getLong(KEY_PENDING_CURSOR, 0) == (long) token
+                && prefs.getLong(KEY_PENDING_START, 0) == prefs.getLong(KEY_CURSOR, startOfToday());
+            if (!current) {
+                Log.w(TAG, "Ignoring acknowledgement of stale usage window " + (long) token);
+                promise.resolve(false);
+                return;
+            }
+            prefs.edit()
+                .putLong(KEY_CURSOR, (long) token)
+                .putStringSet(KEY_OPEN, prefs.getStringSet(KEY_PENDING_OPEN, new HashSet<>()))
+                .remove(KEY_PENDING_START)
+                .remove(KEY_PENDING_CURSOR)
+                .remove(KEY_PENDING_OPEN)
+                .remove(KEY_PENDING_AT)
+                .apply();
+            promise.resolve(true);
+        });
+    }
+
+    private WritableMap collectDeltas(SharedPreferences prefs) {
+        long start = prefs.getLong(KEY_CURSOR, startOfToday());
+        long end = System.currentTimeMillis();
+        Set<String> openAtStart = prefs.getStringSet(KEY_OPEN, new HashSet<>());
+
+        UsageStatsManager usm = (UsageStatsManager) getReactApplicationContext().getSystemService(Context.USAGE_STATS_SERVICE);
+        UsageEvents events = usm.queryEvents(start, end);
+
+        Map<String, Long> foregroundSince = new HashMap<>();
+        Map<String, Long> deltas = new HashMap<>();
+        Map<String, Long> hourly = new HashMap<>();
+        // Packages still in the foreground when the previous window closed were counted up to
+        // the cursor; their time continues from there. Older builds stored "package|openedAt".
+        for (String entry : openAtStart) {
+            int separator = entry.lastIndexOf('|');
+            foregroundSince.put(separator < 0 ? entry : entry.substring(0, separator), start);
+        }
+
+        UsageEvents.Event event = new UsageEvents.Event();
+        while (events.hasNextEvent()) {
+            events.getNextEvent(event);
+            String packageName = event.getPackageName();
+            int type = event.getEventType();
+            if (type == UsageEvents.Event.MOVE_TO_FOREGROUND) {
+                if (!foregroundSince.containsKey(packageName)) {
+                    foregroundSince.put(packageName, event.getTimeStamp());
+                }
+            } else if (type == UsageEvents.Event.MOVE_TO_BACKGROUND) {
+                Long since = foregroundSince.remove(packageName);
+                if (since != null) addUsage(deltas, hourly, packageName, Math.max(since, start), event.getTimeStamp());
+            } else if (isScreenOffOrShutdown(type)) {
+                // Nothing is in use with the screen off, and apps get no background event first
+                for (Map.Entry<String, Long> open : foregroundSince.entrySet()) {
+                    addUsage(deltas, hourly, open.getKey(), Math.max(open.getValue(), start), event.getTimeStamp());
+                }
+                foregroundSince.clear();
+            } else if (isStartup(type)) {
+                // Left open by a reboot without a shutdown event; when they closed is unknown
+                foregroundSince.clear();
+            }
+        }
+
+        Set<String> openAtEnd = new HashSet<>();
+        for (Map.Entry<String, Long> entry : foregroundSince.entrySet()) {
+            addUsage(deltas, hourly, entry.getKey(), Math.max(entry.getValue(), start), end);
+            openAtEnd.add(entry.getKey());
+        }
+
+        prefs.edit()
+            .putLong(KEY_PENDING_START, start)
+            .putLong(KEY_PENDING_CURSOR, end)
+            .putStringSet(KEY_PENDING_OPEN, openAtEnd)
+            .putLong(KEY_PENDING_AT, end)
+            .apply();
+
+        WritableArray usageStats = Arguments.createArray();
+        for (Map.Entry<String, Long> entry : deltas.entrySet()) {
+            if (entry.getValue() <= 0) continue;
+            WritableMap app = Arguments.createMap();
+            app.putString("appName", entry.getKey());
+            app.putDouble("timeInForeground", entry.getValue());
+            usageStats.pushMap(app);
+        }
+        Log.d(TAG, "Collected usage for " + usageStats.size() + " packages since " + start);
+
+        WritableMap result = Arguments.createMap();
+        result.putArray("usageStats", usageStats);
+        WritableMap hourlyUsage = Arguments.createMap();
+        for (Map.Entry<String, Long> entry : hourly.entrySet()) {
+            hourlyUsage.putDouble(entry.getKey(), entry.getValue());
+        }
+        result.putMap("hourlyUsage", hourlyUsage);
+        result.putDouble("token", end);
+        return result;
+    }
+
+    // Screen-off and shutdown events only exist from API 28 and 26; older devices rely on the
+    // apps' own background events
+    private static boolean isScreenOffOrShutdown(int type) {
+        return (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P && type == UsageEvents.Event.SCREEN_NON_INTERACTIVE)
+            || (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && type == UsageEvents.Event.DEVICE_SHUTDOWN);
+    }
+
+    private static boolean isStartup(int type) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && type == UsageEvents.Event.DEVICE_STARTUP;
+    }
+
+    // Adds the foreground span [from, until) to the package total and, split at local hour
+    // boundaries, to the "<day 0-6>_<hour 0-23>" cells of the server's usage histogram
+    private static void addUsage(Map<String, Long> deltas, Map<String, Long> hourly, String packageName, long from, long until) {
+        if (until <= from) return;
+        addTo(deltas, packageName, until - from);
+
+        Calendar calendar = Calendar.getInstance();
+        long t = from;
+        while (t < until) {
+            calendar.setTimeInMillis(t);
+            String cell = (calendar.get(Calendar.DAY_OF_WEEK) - 1) + "_" + calendar.get(Calendar.HOUR_OF_DAY);
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            calendar.add(Calendar.HOUR_OF_DAY, 1);
+            long next = Math.min(calendar.getTimeInMillis(), until);
+            addTo(hourly, cell, next - t);
+            t = next;
+        }
+    }
+
+    private static void addTo(Map<String, Long> totals, String key, long ms) {
+        Long current = totals.get(key);
+        totals.put(key, (current == null ? 0 : current) + ms);
+    }
+
+    private static long startOfToday() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    private boolean hasUsageStatsPermission() {
+        AppOpsManager appOps = (AppOpsManager) getReactApplicationContext().getSystemService(Context.APP_OPS_SERVICE);
+        int mode = appOps.checkOpNoThrow(AppOpsManager.OPSTR_GET_USAGE_STATS, Process.myUid(), getReactApplicationContext().getPackageName());
+        return mode == AppOpsManager.MODE_ALLOWED;
+    }
+
+    private SharedPreferences getPrefs() {
+        return getReactApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
 }
@@ -22,6 +22,12 @@ class WebFilteringModule(reactContext: ReactApplicationContext) : ReactContextBa
         promise.resolve(isEnabled)
     }
 
+    @ReactMethod
+    fun setPairingInfo(parentUid: String, childUid: String, promise: Promise) {
+        PairingConfig.getInstance(reactApplicationContext).setPairing(parentUid, childUid)
+        promise.resolve(true)
+    }
+
     @ReactMethod
     fun requestAccessibilityPermission() {
         val intent = Intent(Settings.ACTION_ACCESSIBILITY_SETTINGS)
@@ -3,8 +3,7 @@ package com.guardian.child
 
 import android.accessibilityservice.AccessibilityService
 import android.accessibilityservice.AccessibilityServiceInfo
-import android.content.Context
-import android.content.SharedPreferences
+import android.content.Intent
 import android.util.Log
 import android.view.accessibility.AccessibilityEvent
 import android.view.accessibility.AccessibilityNodeInfo
@@ -16,20 +15,12 @@ class WebFilteringService : AccessibilityService() {
 
     private val TAG = "WebFilteringService"
     private val db = Firebase.firestore
-    private var parentUid: String? = null
-    private var childUid: String? = null
-    private lateinit var prefs: SharedPreferences
+    private lateinit var pairing: PairingConfig
 
     override fun onCreate() {
         super.onCreate()
-        prefs = getSharedPreferences("ChildAppPrefs", Context.MODE_PRIVATE)
-        loadPairingInfo()
-    }
-
-    private fun loadPairingInfo() {
-        parentUid = prefs.getString("parentUid", null)
-        childUid = prefs.getString("childUid", null)
-        Log.d(TAG, "Loaded pairing info: parentUid=$parentUid, childUid=$childUid")
+        pairing = PairingConfig.getInstance(this)
+        Log.d(TAG, "Loaded pairing info: parentUid=${pairing.parentUid}, childUid=${pairing.childUid}")
     }
 
     override fun onServiceConnected() {
@@ -69,17 +60,14 @@ class WebFilteringService : AccessibilityService() {
         }
 
         // --- URL Capturing Logic --- //
-        if (parentUid == null || childUid == null) {
-            loadPairingInfo()
-            if (parentUid == null || childUid == null) return // Can't do anything without pairing info
-        }
+        if (!pairing.isPaired) return // Can't do anything without pairing info
 
         val parentNodeInfo = event.source
         if (parentNodeInfo != null && (event.eventType == AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED || event.eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED)) {
             val packageName = event.packageName.toString()
             val capturedUrl = captureUrl(parentNodeInfo, packageName)
             if (capturedUrl != null) {
-                Log.d(TAG, "Captured URL: $capturedUrl for child: $childUid")
+                Log.d(TAG, "Captured URL: $capturedUrl for child: ${pairing.childUid}")
                 sendUrlToFirestore(capturedUrl, packageName)
             }
             parentNodeInfo.recycle()
@@ -110,8 +98,8 @@ class WebFilteringService : AccessibilityService() {
     }
 
     private fun sendUrlToFirestore(url: String, packageName: String) {
-        val currentParentUid = parentUid
-        val currentChildUid = childUid
+        val currentParentUid = pairing.parentUid
+        val currentChildUid = pairing.childUid
         if (currentParentUid == null || currentChildUid == null) {
             Log.e(TAG, "Firestore: Pairing info is null. Aborting URL log.")
             return
@@ -1,9 +1,12 @@
 package com.guardian.child.services;
 
 import android.content.Intent;
+import androidx.core.content.ContextCompat;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.guardian.child.GuardianService;
+import com.guardian.child.webrtc.WebRTCModule;
 
 public class ForegroundServiceModule extends ReactContextBaseJavaModule {
 
@@ -18,13 +21,27 @@ public class ForegroundServiceModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void startService() {
-        Intent serviceIntent = new Intent(getReactApplicationContext(), ForegroundService.class);
-        getReactApplicationContext().startService(serviceIntent);
+        // GuardianService is the single foreground host and owns the notification
+        Intent serviceIntent = new Intent(getReactApplicationContext(), GuardianService.class);
+        ContextCompat.startForegroundService(getReactApplicationContext(), serviceIntent);
     }
 
+    // Only ends streaming; GuardianService itself is the always-on monitoring host
+    @ReactMethod
+    public void stopStreams() {
+        WebRTCModule webRTCModule = getReactApplicationContext().getNativeModule(WebRTCModule.class);
+        if (webRTCModule != null) {
+            webRTCModule.stopAllStreams();
+        } else {
+            GuardianService.detachComponent(getReactApplicationContext(), GuardianService.COMPONENT_CAMERA);
+            GuardianService.detachComponent(getReactApplicationContext(), GuardianService.COMPONENT_SCREEN);
+        }
+    }
+
+    /** @deprecated Kept for older JS callers; stops streams only, the service keeps running. */
+    @Deprecated
     @ReactMethod
     public void stopService() {
-        Intent serviceIntent = new Intent(getReactApplicationContext(), ForegroundService.class);
-        getReactApplicationContext().stopService(serviceIntent);
+        stopStreams();
     }
 }
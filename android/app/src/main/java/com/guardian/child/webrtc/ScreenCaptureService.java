@@ -1,70 +0,0 @@
-package com.guardian.child.webrtc;
-
-import android.app.Activity;
-import android.app.Notification;
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
-import android.app.Service;
-import android.content.Context;
-import android.content.Intent;
-import android.graphics.Color;
-import android.os.Build;
-import android.os.IBinder;
-
-import androidx.annotation.Nullable;
-import androidx.core.app.NotificationCompat;
-
-import com.facebook.react.bridge.Promise;
-import com.facebook.react.bridge.ReactApplicationContext;
-
-public class ScreenCaptureService extends Service {
-    private static final String CHANNEL_ID = "ScreenCaptureServiceChannel";
-    private static Promise promise;
-    private static ReactApplicationContext context;
-
-    public static void setPromise(Promise promise) {
-        ScreenCaptureService.promise = promise;
-    }
-
-    public static void setContext(ReactApplicationContext context) {
-        ScreenCaptureService.context = context;
-    }
-
-    @Override
-    public void onCreate() {
-        super.onCreate();
-        createNotificationChannel();
-    }
-
-    @Override
-    public int onStartCommand(Intent intent, int flags, int startId) {
-        Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setContentTitle("Screen Capture Service")
-                .setContentText("Capturing screen for streaming.")
-                .setSmallIcon(android.R.drawable.ic_media_play)
-                .build();
-
-        startForeground(1, notification);
-
-        return START_NOT_STICKY;
-    }
-
-    @Nullable
-    @Override
-    public IBinder onBind(Intent intent) {
-        return null;
-    }
-
-    private void createNotificationChannel() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationChannel serviceChannel = new NotificationChannel(
-                    CHANNEL_ID,
-                    "Screen Capture Service Channel",
-                    NotificationManager.IMPORTANCE_DEFAULT
-            );
-            serviceChannel.setLightColor(Color.BLUE);
-            NotificationManager manager = getSystemService(NotificationManager.class);
-            manager.createNotificationChannel(serviceChannel);
-        }
-    }
-}
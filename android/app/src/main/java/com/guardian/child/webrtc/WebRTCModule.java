@@ -3,6 +3,7 @@ package com.guardian.child.webrtc;
 import android.app.Activity;
 import android.content.Intent;
 import android.media.projection.MediaProjectionManager;
+import android.util.Log;
 
 import com.facebook.react.bridge.ActivityEventListener;
 import com.facebook.react.bridge.Promise;
@@ -10,8 +11,10 @@ import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.ReadableMap;
+import com.guardian.child.GuardianService;
 
 public class WebRTCModule extends ReactContextBaseJavaModule implements ActivityEventListener {
+    private static final String TAG = "WebRTCModule";
     private final WebRTCEngine webRTCEngine;
     private static final int SCREEN_CAPTURE_REQUEST_CODE = 1;
 
@@ -50,20 +53,26 @@ public class WebRTCModule extends ReactContextBaseJavaModule implements Activity
 
     @ReactMethod
     public void startCameraStream(Promise promise) {
-        webRTCEngine.startCameraStream();
-        promise.resolve(null);
+        // The camera may only be opened once the host holds the camera foreground type
+        GuardianService.attachComponent(getReactApplicationContext(), GuardianService.COMPONENT_CAMERA, attached -> {
+            if (!attached) {
+                promise.reject("E_FOREGROUND_SERVICE", "Could not start the camera foreground service.");
+                return;
+            }
+            webRTCEngine.startCameraStream();
+            promise.resolve(null);
+        });
     }
 
     @ReactMethod
     public void stopCameraStream(Promise promise) {
         webRTCEngine.stopCameraStream();
+        GuardianService.detachComponent(getReactApplicationContext(), GuardianService.COMPONENT_CAMERA);
         promise.resolve(null);
     }
 
     @ReactMethod
     public void startScreenStream(Promise promise) {
-        ScreenCaptureService.setPromise(promise);
-        ScreenCaptureService.setContext(getReactApplicationContext());
         MediaProjectionManager mediaProjectionManager = (MediaProjectionManager) getReactApplicationContext().getSystemService(ReactApplicationContext.MEDIA_PROJECTION_SERVICE);
         Activity activity = getCurrentActivity();
         if (activity != null) {
@@ -74,14 +83,30 @@ public class WebRTCModule extends ReactContextBaseJavaModule implements Activity
     @ReactMethod
     public void stopScreenStream(Promise promise) {
         webRTCEngine.stopScreenStream();
+        GuardianService.detachComponent(getReactApplicationContext(), GuardianService.COMPONENT_SCREEN);
         promise.resolve(null);
     }
 
+    /** Stops any camera or screen stream and detaches both from the monitoring host. */
+    public void stopAllStreams() {
+        webRTCEngine.stopCameraStream();
+        webRTCEngine.stopScreenStream();
+        GuardianService.detachComponent(getReactApplicationContext(), GuardianService.COMPONENT_CAMERA);
+        GuardianService.detachComponent(getReactApplicationContext(), GuardianService.COMPONENT_SCREEN);
+    }
+
     @Override
     public void onActivityResult(Activity activity, int requestCode, int resultCode, Intent data) {
         if (requestCode == SCREEN_CAPTURE_REQUEST_CODE) {
             if (resultCode == Activity.RESULT_OK) {
-                webRTCEngine.startScreenStream(data);
+                // The host must hold the mediaProjection type before the projection is created
+                GuardianService.attachComponent(getReactApplicationContext(), GuardianService.COMPONENT_SCREEN, attached -> {
+                    if (attached) {
+                        webRTCEngine.startScreenStream(data);
+                    } else {
+                        Log.e(TAG, "Could not start the screen capture foreground service.");
+                    }
+                });
             }
         }
     }
@@ -0,0 +1,76 @@
+/*
+ * Measures module-load (cold start) time of each Cloud Function's handler module.
+ * Every sample runs in a fresh Node process so nothing is shared through the require cache.
+ *
+ * Build first (tsc output in functions/lib), then:
+ *   node scripts/coldStartBenchmark.js [runs]
+ */
+const { execFileSync } = require('child_process');
+const path = require('path');
+
+const LIB_DIR = path.resolve(__dirname, '..', 'lib');
+const RUNS = Number(process.argv[2]) || 5;
+
+// Function -> module it loads on first invocation (see src/index.ts)
+const FUNCTIONS = {
+  index: 'index',
+  generateAndStoreKeyPair: 'handlers/keys',
+  getPublicKey: 'handlers/keys',
+  generatePairingRequest: 'handlers/pairing',
+  linkChildDevice: 'handlers/pairing',
+  unpairChildDevice: 'handlers/pairing',
+  onChildDeviceDeleted: 'handlers/pairing',
+  updateDeviceStatus: 'handlers/deviceStatus',
+  addGeofence: 'handlers/geofences',
+  getGeofences: 'handlers/geofences',
+  updateGeofence: 'handlers/geofences',
+  deleteGeofence: 'handlers/geofences',
+  recordAppUsage: 'handlers/appUsage',
+  getIntelligentInsights: 'handlers/appUsage',
+  getPairedChildren: 'handlers/children',
+  getDashboardSummary: 'handlers/children',
+  sweepPresence: 'handlers/presence',
+  runRetention: 'handlers/retention',
+  sendWebRTCSignal: 'handlers/signaling',
+};
+
+// A deployed instance loads index.js before the handler, so it is included in each sample
+const LOAD_SCRIPT = `
+  const start = process.hrtime.bigint();
+  require(process.argv[1]);
+  if (process.argv[2] !== process.argv[1]) require(process.argv[2]);
+  process.stdout.write(String(Number(process.hrtime.bigint() - start) / 1e6));
+`;
+
+function sample(modulePath) {
+  const indexPath = path.join(LIB_DIR, 'index.js');
+  const output = execFileSync(process.execPath, ['-e', LOAD_SCRIPT, indexPath, modulePath], {
+    env: { ...process.env, GCLOUD_PROJECT: process.env.GCLOUD_PROJECT || 'cold-start-benchmark' },
+  });
+  return Number(output.toString());
+}
+
+function median(values) {
+  const sorted = [...values].sort((a, b) => a - b);
+  const mid = Math.floor(sorted.length / 2);
+  return sorted.length % 2 ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2;
+}
+
+const results = [];
+for (const [name, module] of Object.entries(FUNCTIONS)) {
+  const modulePath = path.join(LIB_DIR, `${module}.js`);
+  const samples = [];
+  for (let i = 0; i < RUNS; i++) {
+    samples.push(sample(modulePath));
+  }
+  results.push({
+    function: name,
+    module,
+    'median ms': median(samples).toFixed(1),
+    'min ms': Math.min(...samples).toFixed(1),
+    'max ms': Math.max(...samples).toFixed(1),
+  });
+}
+
+console.log(`Module load time over ${RUNS} fresh processes each:`);
+console.table(results);
@@ -17,17 +17,26 @@ export async function importKey(jwk: jose.JWK, alg: string) {
   return await jose.importJWK(jwk, alg);
 }
 
-// Sign a payload with a private key
-export async function signPayload(privateKey: jose.KeyLike, payload: any) {
+// Sign a payload with a private key; kid identifies the key version that signed it
+export async function signPayload(privateKey: jose.KeyLike, payload: any, kid?: string) {
   const jws = await new jose.CompactSign(
     new TextEncoder().encode(JSON.stringify(payload))
   )
-    .setProtectedHeader({ alg: 'ES256' })
+    .setProtectedHeader(kid ? { alg: 'ES256', kid } : { alg: 'ES256' })
     .sign(privateKey);
 
   return jws;
 }
 
+// Read the key id from a JWS header without verifying it
+export function readKeyId(jws: string): string | undefined {
+  try {
+    return jose.decodeProtectedHeader(jws).kid;
+  } catch (error) {
+    return undefined;
+  }
+}
+
 // Verify a signature with a public key
 export async function verifySignature(publicKey: jose.KeyLike, jws: string, payload: any) {
   try {
@@ -0,0 +1,10 @@
+import * as admin from 'firebase-admin';
+
+// Initialised by the first handler module that is loaded, not by index.ts, so the
+// firebase-admin startup cost is paid only by functions that are actually invoked.
+if (admin.apps.length === 0) {
+  admin.initializeApp();
+}
+
+export { admin };
+export const db = admin.firestore();
@@ -0,0 +1,156 @@
+import * as functions from 'firebase-functions';
+import { admin, db } from '../firebase';
+import { resolveParentUid } from '../parentResolver';
+import { ROLLUPS_COLLECTION, HISTOGRAM_DOC, BACKFILL_DOC, RANGE_DAYS, backfillRollups, addToRollups, addToHistogram, granularityFor, peakFromHistogram, periodKey, toDateString } from '../usageRollups';
+
+export async function recordAppUsage(data: any, context: functions.https.CallableContext) {
+    if (!context.auth) {
+        throw new functions.https.HttpsError('unauthenticated', 'The request must be authenticated.');
+    }
+
+    const childUid = context.auth.uid;
+    const { usageStats, hourlyUsage, tzOffsetMinutes } = data;
+
+    if (!usageStats || !Array.isArray(usageStats)) {
+        throw new functions.https.HttpsError('invalid-argument', 'Missing or invalid usageStats.');
+    }
+
+    // 1. Find the parent UID
+    const parentUid = await resolveParentUid(context.auth);
+
+    // 2. Prepare data for Firestore
+    const batch = db.batch();
+    const now = new Date();
+    const today = toDateString(now);
+    const childRef = db.collection('users').doc(parentUid).collection('children').doc(childUid);
+    const appUsageCollectionRef = childRef.collection('appUsage');
+
+    const dailyUsageRef = appUsageCollectionRef.doc(today);
+
+    const usageByApp: { [key: string]: number } = {};
+    const usageUpdate: { [key: string]: admin.firestore.FieldValue } = {};
+    usageStats.forEach(app => {
+        if (app.appName && typeof app.timeInForeground === 'number') {
+            usageByApp[app.appName] = (usageByApp[app.appName] || 0) + app.timeInForeground;
+            usageUpdate[app.appName] = admin.firestore.FieldValue.increment(usageByApp[app.appName]);
+        }
+    });
+
+    if (Object.keys(usageUpdate).length > 0) {
+        batch.set(dailyUsageRef, {
+            ...usageUpdate,
+            lastUpdated: admin.firestore.FieldValue.serverTimestamp()
+        }, { merge: true });
+
+        // 3. Keep the weekly and monthly rollups in step with the daily doc
+        const rollupsRef = childRef.collection(ROLLUPS_COLLECTION);
+        addToRollups(batch, rollupsRef, now, usageByApp);
+
+        // 4. Hour-of-day histogram for peak usage, in the hours the usage happened. Older
+        // clients send no split (upload hour) and no offset (UTC).
+        const offset = typeof tzOffsetMinutes === 'number' && Math.abs(tzOffsetMinutes) <= 14 * 60 ? tzOffsetMinutes : 0;
+        const total = Object.values(usageByApp).reduce((sum, ms) => sum + ms, 0);
+        const hourly = hourlyUsage && typeof hourlyUsage === 'object' ? hourlyUsage : undefined;
+        addToHistogram(batch, rollupsRef, now, offset, total, hourly);
+    }
+
+
+    await batch.commit();
+
+    return { status: 'success', message: 'App usage recorded.' };
+}
+
+export async function getIntelligentInsights(data: any, context: functions.https.CallableContext) {
+    if (!context.auth) {
+        throw new functions.https.HttpsError('unauthenticated', 'The request must be authenticated.');
+    }
+
+    const parentUid = context.auth.uid;
+    const { childUid, timeRange } = data;
+
+    if (!childUid || !timeRange) {
+        throw new functions.https.HttpsError('invalid-argument', 'Missing childUid or timeRange.');
+    }
+
+    const childRef = db.collection('users').doc(parentUid).collection('children').doc(childUid);
+    const rollupsRef = childRef.collection(ROLLUPS_COLLECTION);
+
+    // Default to last 7 days
+    const days = RANGE_DAYS[timeRange] || 7;
+    const granularity = granularityFor(days);
+
+    const endDate = new Date();
+    const startDate = new Date();
+    startDate.setDate(endDate.getDate() - (days - 1));
+
+    const dateStrings: string[] = [];
+    const periodKeys = new Set<string>();
+    for (let i = 0; i < days; i++) {
+        const d = new Date(startDate);
+        d.setDate(startDate.getDate() + i);
+        dateStrings.push(toDateString(d));
+        periodKeys.add(periodKey(d, granularity));
+    }
+
+    // The range touches at most two weeks or 13 months, so this is 1-13 rollup reads plus
+    // the histogram and backfill marker, all in one round trip
+    const readRollups = () => db.getAll(
+        rollupsRef.doc(HISTOGRAM_DOC),
+        rollupsRef.doc(BACKFILL_DOC),
+        ...Array.from(periodKeys).map(key => rollupsRef.doc(key))
+    );
+    let [histogramDoc, backfillDoc, ...rollupDocs] = await readRollups();
+
+    // Usage recorded before rollups existed is only in the daily docs; fold it in once per child
+    if (!backfillDoc.exists) {
+        await backfillRollups(db, childRef);
+        [histogramDoc, backfillDoc, ...rollupDocs] = await readRollups();
+    }
+
+    let totalScreenTime = 0;
+    const allAppUsage: { [key: string]: number } = {};
+    const screenTimeByDay: { [key: string]: number } = {};
+
+    rollupDocs.forEach(doc => {
+        const docData = doc.data();
+        if (!docData) return;
+
+        for (const day of dateStrings) {
+            const dailyTotal = docData.days?.[day];
+            if (typeof dailyTotal === 'number') {
+                screenTimeByDay[day] = dailyTotal;
+                totalScreenTime += dailyTotal;
+            }
+        }
+
+        // Weekly docs carry per-day app usage and stay exact. Longer ranges rank apps over the
+        // whole periods they touch, which can include usage outside the range (topAppsApproximate).
+        const appMaps = granularity === 'week'
+            ? dateStrings.map(day => docData.dailyApps?.[day] || {})
+            : [docData.apps || {}];
+        for (const apps of appMaps) {
+            for (const appName in apps) {
+                allAppUsage[appName] = (allAppUsage[appName] || 0) + (apps[appName] || 0);
+            }
+        }
+    });
+
+    const topApps = Object.entries(allAppUsage)
+        .sort(([, a], [, b]) => b - a)
+        .slice(0, 5)
+        .map(([appName, time]) => ({ appName, time }));
+
+    const mostUsedApp = topApps.length > 0 ? topApps[0] : null;
+    
+    const peakUsage = peakFromHistogram(histogramDoc.data()?.cells);
+
+
+    return {
+        totalScreenTime,
+        mostUsedApp,
+        topApps,
+        topAppsApproximate: granularity !== 'week',
+        screenTimeByDay,
+        peakUsage
+    };
+}
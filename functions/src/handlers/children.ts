@@ -0,0 +1,94 @@
+import * as functions from 'firebase-functions';
+import { db } from '../firebase';
+import { toDateString } from '../usageRollups';
+
+export async function getPairedChildren(data: any, context: functions.https.CallableContext) {
+    if (!context.auth) {
+        throw new functions.https.HttpsError('unauthenticated', 'The request must be authenticated.');
+    }
+
+    const parentUid = context.auth.uid;
+
+    const childrenRef = db.collection('users').doc(parentUid).collection('children');
+    const snapshot = await childrenRef.get();
+
+    const children = snapshot.docs.map(doc => ({ id: doc.id, ...doc.data() }));
+
+    return children;
+}
+
+// Only the fields the parent dashboard renders; the rest of deviceInfo is never sent
+const DASHBOARD_FIELDS = [
+    'isOnline',
+    'lastSeen',
+    'battery',
+    'deviceInfo.deviceName',
+    'deviceInfo.deviceType',
+    'deviceInfo.batteryLevel',
+    'deviceInfo.isCharging',
+    'deviceInfo.lastKnownLocation',
+    'deviceInfo.lastSync',
+    'deviceInfo.onlineStatus',
+    'deviceInfo.status',
+];
+
+// Status and today's screen time for every child in one call. Child documents are read with
+// a field mask and today's appUsage documents are fetched alongside them, so the cost is two
+// parallel batched reads however many children the parent has.
+export async function getDashboardSummary(data: any, context: functions.https.CallableContext) {
+    if (!context.auth) {
+        throw new functions.https.HttpsError('unauthenticated', 'The request must be authenticated.');
+    }
+
+    const parentUid = context.auth.uid;
+    const today = toDateString(new Date());
+
+    const childRefs = await db.collection('users').doc(parentUid).collection('children').listDocuments();
+    if (childRefs.length === 0) {
+        return { date: today, children: [] };
+    }
+
+    const [childDocs, usageDocs] = await Promise.all([
+        db.getAll(...childRefs, { fieldMask: DASHBOARD_FIELDS }),
+        db.getAll(...childRefs.map(ref => ref.collection('appUsage').doc(today))),
+    ]);
+
+    const children = [];
+    for (let i = 0; i < childDocs.length; i++) {
+        const childDoc = childDocs[i];
+        // listDocuments also returns unpaired children whose subcollections are still around
+        if (!childDoc.exists) continue;
+
+        const deviceInfo = childDoc.get('deviceInfo') || {};
+        const location = deviceInfo.lastKnownLocation;
+
+        let todayScreenTime = 0;
+        let topApp: { appName: string; time: number } | null = null;
+        const usage = usageDocs[i].data() || {};
+        for (const appName in usage) {
+            const time = usage[appName];
+            if (typeof time !== 'number') continue; // lastUpdated
+            todayScreenTime += time;
+            if (!topApp || time > topApp.time) {
+                topApp = { appName, time };
+            }
+        }
+
+        children.push({
+            childUid: childDoc.id,
+            deviceName: deviceInfo.deviceName || null,
+            deviceType: deviceInfo.deviceType || null,
+            isOnline: childDoc.get('isOnline') ?? deviceInfo.onlineStatus === 'online',
+            lastSeen: childDoc.get('lastSeen') || null,
+            lastSync: deviceInfo.lastSync || null,
+            status: deviceInfo.status || null,
+            battery: deviceInfo.batteryLevel ?? childDoc.get('battery') ?? null,
+            isCharging: deviceInfo.isCharging ?? null,
+            location: location ? { latitude: location.latitude, longitude: location.longitude } : null,
+            todayScreenTime,
+            topApp,
+        });
+    }
+
+    return { date: today, children };
+}
@@ -0,0 +1,43 @@
+import * as functions from 'firebase-functions';
+import { admin, db } from '../firebase';
+import { resolveParentUid } from '../parentResolver';
+
+export async function updateDeviceStatus(data: any, context: functions.https.CallableContext) {
+    if (!context.auth) {
+        throw new functions.https.HttpsError('unauthenticated', 'The request must be authenticated.');
+    }
+
+    const childUid = context.auth.uid;
+    const { updatedDetails } = data;
+
+    if (!updatedDetails) {
+        throw new functions.https.HttpsError('invalid-argument', 'Missing updatedDetails.');
+    }
+
+    // First, find the parent UID (token claim, cache, then the 'children' collection)
+    const parentUid = await resolveParentUid(context.auth);
+
+    const childDeviceRef = db.collection('users').doc(parentUid).collection('children').doc(childUid);
+
+    // Use dot notation to update nested fields in deviceInfo
+    const updatePayload: { [key: string]: any } = {};
+    for (const key in updatedDetails) {
+        // Online state is derived from lastSeen by the presence sweep
+        if (key === 'onlineStatus') continue;
+        if (Object.prototype.hasOwnProperty.call(updatedDetails, key)) {
+             if (key === 'location' && updatedDetails.location) {
+                updatePayload['deviceInfo.lastKnownLocation'] = new admin.firestore.GeoPoint(updatedDetails.location.latitude, updatedDetails.location.longitude);
+            } else {
+                updatePayload[`deviceInfo.${key}`] = updatedDetails[key];
+            }
+        }
+    }
+    
+    // Always update lastSync and the lastSeen timestamp the presence sweep reads
+    updatePayload['deviceInfo.lastSync'] = new Date().toISOString();
+    updatePayload['lastSeen'] = Date.now();
+
+    await childDeviceRef.update(updatePayload);
+
+    return { status: 'success', message: 'Device status updated.' };
+}
@@ -0,0 +1,86 @@
+import * as functions from 'firebase-functions';
+import { admin, db } from '../firebase';
+
+export async function addGeofence(data: any, context: functions.https.CallableContext) {
+  if (!context.auth) {
+    throw new functions.https.HttpsError('unauthenticated', 'The request must be authenticated.');
+  }
+
+  const parentUid = context.auth.uid;
+  const { name, latitude, longitude, radius } = data;
+
+  if (!name || !latitude || !longitude || !radius) {
+    throw new functions.https.HttpsError('invalid-argument', 'Missing required geofence data.');
+  }
+
+  const center = new admin.firestore.GeoPoint(latitude, longitude);
+
+  const geofenceRef = db.collection('users').doc(parentUid).collection('geofences');
+
+  await geofenceRef.add({
+    name,
+    center,
+    radius,
+    createdAt: admin.firestore.FieldValue.serverTimestamp(),
+  });
+
+  return { status: 'success', message: 'Geofence added successfully.' };
+}
+
+export async function getGeofences(data: any, context: functions.https.CallableContext) {
+    if (!context.auth) {
+        throw new functions.https.HttpsError('unauthenticated', 'The request must be authenticated.');
+    }
+
+    const parentUid = context.auth.uid;
+    const geofencesRef = db.collection('users').doc(parentUid).collection('geofences');
+    const snapshot = await geofencesRef.get();
+
+    const geofences = snapshot.docs.map(doc => ({ id: doc.id, ...doc.data() }));
+
+    return geofences;
+}
+
+export async function updateGeofence(data: any, context: functions.https.CallableContext) {
+    if (!context.auth) {
+        throw new functions.https.HttpsError('unauthenticated', 'The request must be authenticated.');
+    }
+
+    const parentUid = context.auth.uid;
+    const { geofenceId, ...updateData } = data;
+
+    if (!geofenceId) {
+        throw new functions.https.HttpsError('invalid-argument', 'Missing geofenceId.');
+    }
+
+     if (updateData.latitude && updateData.longitude) {
+        updateData.center = new admin.firestore.GeoPoint(updateData.latitude, updateData.longitude);
+        delete updateData.latitude;
+        delete updateData.longitude;
+    }
+
+    const geofenceRef = db.collection('users').doc(parentUid).collection('geofences').doc(geofenceId);
+
+    await geofenceRef.update(updateData);
+
+    return { status: 'success', message: 'Geofence updated successfully.' };
+}
+
+export async function deleteGeofence(data: any, context: functions.https.CallableContext) {
+    if (!context.auth) {
+        throw new functions.https.HttpsError('unauthenticated', 'The request must be authenticated.');
+    }
+
+    const parentUid = context.auth.uid;
+    const { geofenceId } = data;
+
+    if (!geofenceId) {
+        throw new functions.https.HttpsError('invalid-argument', 'Missing geofenceId.');
+    }
+
+    const geofenceRef = db.collection('users').doc(parentUid).collection('geofences').doc(geofenceId);
+
+    await geofenceRef.delete();
+
+    return { status: 'success', message: 'Geofence deleted successfully.' };
+}
@@ -0,0 +1,47 @@
+import * as functions from 'firebase-functions';
+import { admin, db } from '../firebase';
+import { generateKeyPair, exportKey } from '../cryptoService';
+import { KEYS_COLLECTION, KEY_DOC, invalidateSigningKeys } from '../signingKeyCache';
+
+// Securely store and retrieve keys from Firestore (for demonstration)
+// In production, use a secure secret manager.
+
+// Generates and stores a new key pair, should be called once for setup
+export async function generateAndStoreKeyPair(data: any, context: functions.https.CallableContext) {
+  // Add authentication to ensure only authorized users can call this
+  // if (!context.auth || !isAdmin(context.auth.uid)) { 
+  //   throw new functions.https.HttpsError('permission-denied', 'Must be an admin to call this function.');
+  // }'''
+
+  const { publicKey, privateKey } = await generateKeyPair();
+
+  const publicKeyJwk = await exportKey(publicKey);
+  const privateKeyJwk = await exportKey(privateKey);
+
+  // Carried as the JWS kid; verifiers look the version up in its own doc, so signatures made
+  // by instances still holding the previous key keep verifying after a rotation
+  const keyVersion = db.collection(KEYS_COLLECTION).doc().id;
+  const keyPair = {
+    publicKey: publicKeyJwk,
+    privateKey: privateKeyJwk, // Storing private key in Firestore is NOT recommended for production
+    keyVersion,
+    createdAt: admin.firestore.FieldValue.serverTimestamp(),
+  };
+
+  const batch = db.batch();
+  batch.set(db.collection(KEYS_COLLECTION).doc(keyVersion), keyPair);
+  batch.set(db.collection(KEYS_COLLECTION).doc(KEY_DOC), keyPair);
+  await batch.commit();
+  invalidateSigningKeys();
+
+  return { status: 'success', message: 'Key pair generated and stored.' };
+}
+
+// Function to retrieve the public key
+export async function getPublicKey(data: any, context: functions.https.CallableContext) {
+  const keyPairRef = await db.collection(KEYS_COLLECTION).doc(KEY_DOC).get();
+  if (!keyPairRef.exists) {
+    throw new functions.https.HttpsError('not-found', 'Signing keys have not been generated yet.');
+  }
+  return keyPairRef.data()?.publicKey;
+}
@@ -0,0 +1,180 @@
+import * as functions from 'firebase-functions';
+import { admin, db } from '../firebase';
+import { signPayload, verifySignature, readKeyId } from '../cryptoService';
+import { getSigningKeys, getVerificationKey } from '../signingKeyCache';
+import { invalidateParentUid } from '../parentResolver';
+
+export async function generatePairingRequest(data: any, context: functions.https.CallableContext) {
+  if (!context.auth) {
+    throw new functions.https.HttpsError('unauthenticated', 'The request must be authenticated.');
+  }
+
+  const parentUid = context.auth.uid;
+  const { planId, deviceLimit } = data;
+
+  if (!planId || typeof deviceLimit === 'undefined') {
+    throw new functions.https.HttpsError('invalid-argument', 'Missing planId or deviceLimit.');
+  }
+
+  const nonce = db.collection('pairingRequests').doc().id;
+  const timestamp = Date.now();
+
+  const pairingData = { parentUid, timestamp, nonce, planId, deviceLimit };
+
+  // Retrieve private key (cached per instance) and sign the data
+  const signingKeys = await getSigningKeys();
+  if (!signingKeys) {
+    throw new functions.https.HttpsError('failed-precondition', 'Signing keys not found.');
+  }
+  const signature = await signPayload(signingKeys.privateKey, pairingData, signingKeys.version);
+
+  const qrData = { ...pairingData, signature };
+
+  await db.collection('pairingRequests').doc(nonce).set({
+    ...pairingData,
+    status: 'pending',
+    createdAt: admin.firestore.FieldValue.serverTimestamp(),
+  });
+
+  return qrData;
+}
+
+export async function linkChildDevice(data: any, context: functions.https.CallableContext) {
+  if (!context.auth) {
+    throw new functions.https.HttpsError('unauthenticated', 'The request must be authenticated.');
+  }
+
+  const childUid = context.auth.uid;
+  const { qrData, deviceInfo } = data;
+  const { parentUid, timestamp, nonce, planId, deviceLimit, signature } = qrData;
+
+  if (!parentUid || !timestamp || !nonce || !planId || typeof deviceLimit === 'undefined' || !signature) {
+    throw new functions.https.HttpsError('invalid-argument', 'Missing required QR data fields.');
+  }
+
+  if (!deviceInfo) {
+    throw new functions.https.HttpsError('invalid-argument', 'Missing deviceInfo.');
+  }
+
+  // 1. Verify Signature
+  // Looked up by the JWS kid, so a QR signed with a key rotated out since still verifies
+  const publicKey = await getVerificationKey(readKeyId(signature));
+  if (!publicKey) {
+    throw new functions.https.HttpsError('failed-precondition', 'Signing keys not found.');
+  }
+
+  const payloadToVerify = { parentUid, timestamp, nonce, planId, deviceLimit };
+
+  const verifiedPayload = await verifySignature(publicKey, signature, payloadToVerify);
+
+  if (!verifiedPayload) {
+    throw new functions.https.HttpsError('unauthenticated', 'Invalid signature.');
+  }
+
+  const pairingRef = db.collection('pairingRequests').doc(nonce);
+  const childrenCollectionRef = db.collection('users').doc(parentUid).collection('children');
+  const parentChildRef = childrenCollectionRef.doc(childUid);
+  const counterRef = deviceCounterRef(parentUid);
+  const location = deviceInfo.location ? new admin.firestore.GeoPoint(deviceInfo.location.latitude, deviceInfo.location.longitude) : null;
+
+  // 2-4. Validate the nonce, enforce the device limit and link, all in one transaction so
+  // concurrent pairings cannot both pass the limit check or reuse a nonce
+  await db.runTransaction(async transaction => {
+    const [pairingDoc, counterDoc, existingChildDoc] = await transaction.getAll(pairingRef, counterRef, parentChildRef);
+
+    if (!pairingDoc.exists || pairingDoc.data()?.status !== 'pending') {
+      throw new functions.https.HttpsError('not-found', 'Pairing request not found or has expired.');
+    }
+
+    // The counter is seeded from a count() aggregation the first time a parent pairs after it was introduced
+    let deviceCount: number;
+    if (counterDoc.exists) {
+      deviceCount = counterDoc.data()?.count || 0;
+    } else {
+      const countSnapshot = await transaction.get(childrenCollectionRef.count());
+      deviceCount = countSnapshot.data().count;
+    }
+
+    // Re-pairing a device that is already linked does not take another slot
+    const isNewDevice = !existingChildDoc.exists;
+    if (isNewDevice && deviceCount >= deviceLimit) {
+      throw new functions.https.HttpsError('resource-exhausted', 'Device limit reached.');
+    }
+
+    transaction.set(parentChildRef, {
+      childUid,
+      pairedAt: admin.firestore.FieldValue.serverTimestamp(),
+      planId,
+      // Seeds presence so the sweep tracks the device from the start
+      isOnline: true,
+      lastSeen: Date.now(),
+      deviceInfo: {
+          ...deviceInfo,
+          lastKnownLocation: location,
+          status: 'WORKING'
+      }
+    });
+
+    const childMetaRef = db.collection('children').doc(childUid);
+    transaction.set(childMetaRef, { parentUid, pairedAt: admin.firestore.FieldValue.serverTimestamp(), planId });
+
+    transaction.update(pairingRef, { status: 'linked', linkedChildUid: childUid, linkedAt: admin.firestore.FieldValue.serverTimestamp() });
+
+    transaction.set(counterRef, { count: deviceCount + (isNewDevice ? 1 : 0), updatedAt: admin.firestore.FieldValue.serverTimestamp() });
+  });
+
+  // Mint the parent mapping into the child's token so status callables can skip the lookup
+  invalidateParentUid(childUid);
+  await admin.auth().setCustomUserClaims(childUid, { parentUid });
+
+  return { status: 'success', message: 'Device successfully linked.' };
+}
+
+// Per-parent count of linked devices, so the limit check in linkChildDevice is a single read
+function deviceCounterRef(parentUid: string) {
+  return db.collection('users').doc(parentUid).collection('meta').doc('deviceCounter');
+}
+
+// Keeps the device counter right however a child link is removed (unpair, console, cleanup).
+// Recounting instead of decrementing keeps the trigger idempotent under redelivery.
+export async function onChildDeviceDeleted(snapshot: functions.firestore.QueryDocumentSnapshot, context: functions.EventContext) {
+  const { parentUid } = context.params;
+  const childrenCollectionRef = db.collection('users').doc(parentUid).collection('children');
+  const counterRef = deviceCounterRef(parentUid);
+
+  await db.runTransaction(async transaction => {
+    const countSnapshot = await transaction.get(childrenCollectionRef.count());
+    transaction.set(counterRef, { count: countSnapshot.data().count, updatedAt: admin.firestore.FieldValue.serverTimestamp() });
+  });
+}
+
+export async function unpairChildDevice(data: any, context: functions.https.CallableContext) {
+  if (!context.auth) {
+    throw new functions.https.HttpsError('unauthenticated', 'The request must be authenticated.');
+  }
+
+  const parentUid = context.auth.uid;
+  const { childUid } = data;
+
+  if (!childUid) {
+    throw new functions.https.HttpsError('invalid-argument', 'Missing childUid.');
+  }
+
+  const childMetaRef = db.collection('children').doc(childUid);
+  const childMetaDoc = await childMetaRef.get();
+  if (!childMetaDoc.exists || childMetaDoc.data()?.parentUid !== parentUid) {
+    throw new functions.https.HttpsError('not-found', 'Child device not found.');
+  }
+
+  const batch = db.batch();
+  batch.delete(db.collection('users').doc(parentUid).collection('children').doc(childUid));
+  batch.delete(childMetaRef);
+  await batch.commit();
+
+  // Drop the claim and force the child to pick up a token without it
+  invalidateParentUid(childUid);
+  await admin.auth().setCustomUserClaims(childUid, null);
+  await admin.auth().revokeRefreshTokens(childUid);
+
+  return { status: 'success', message: 'Device successfully unpaired.' };
+}
@@ -0,0 +1,105 @@
+import * as functions from 'firebase-functions';
+import { admin, db } from '../firebase';
+
+// GuardianService flushes status every 5 minutes and DeviceStatusWriter writes lastSeen at
+// least every third flush (at most ~17 minutes apart with jitter). Under doze each flush is
+// stretched 4x (up to 22 minutes) and writes lastSeen every time. The cutoff covers either
+// gap plus a sweep interval before a device reads as offline.
+export const OFFLINE_AFTER_MS = 35 * 60 * 1000;
+
+const BATCH_SIZE = 500;
+// Bounds one run; anything left over is picked up by the next sweep
+const MAX_PAGES_PER_RUN = 20;
+
+// Progress of the one-off pass that gives devices paired before the sweep an isOnline field
+export const BACKFILL_DOC = 'maintenance/presenceBackfill';
+
+// isOnline and deviceInfo.onlineStatus are owned by this sweep; clients only send lastSeen.
+// Both queries use the (isOnline, lastSeen) collection-group index in firestore.indexes.json.
+export async function sweepPresence(context: functions.EventContext) {
+  const cutoff = Date.now() - OFFLINE_AFTER_MS;
+  const children = db.collectionGroup('children');
+
+  const backfilled = await backfillPresence(cutoff);
+
+  const wentOffline = await flipPresence(children.where('isOnline', '==', true).where('lastSeen', '<', cutoff), false);
+  const cameOnline = await flipPresence(children.where('isOnline', '==', false).where('lastSeen', '>=', cutoff), true);
+
+  console.log(`Presence sweep: ${backfilled} backfilled, ${wentOffline} went offline, ${cameOnline} came online.`);
+  return null;
+}
+
+// Updated documents drop out of the query, so each page simply re-runs it
+async function flipPresence(query: admin.firestore.Query, isOnline: boolean): Promise<number> {
+  let flipped = 0;
+  for (let page = 0; page < MAX_PAGES_PER_RUN; page++) {
+    const snapshot = await query.select().limit(BATCH_SIZE).get();
+    if (snapshot.empty) break;
+
+    const batch = db.batch();
+    snapshot.docs.forEach(doc => {
+      batch.update(doc.ref, {
+        isOnline,
+        'deviceInfo.onlineStatus': isOnline ? 'online' : 'offline',
+      });
+    });
+    await batch.commit();
+    flipped += snapshot.size;
+
+    if (snapshot.size < BATCH_SIZE) break;
+  }
+  return flipped;
+}
+
+// Devices paired before the sweep have no isOnline field, so neither sweep query matches them.
+// Walks every child status document once, in document-id order with a resumable cursor, and
+// seeds isOnline (and lastSeen from deviceInfo.lastSync where only that exists). Once done,
+// each sweep pays a single read of BACKFILL_DOC.
+async function backfillPresence(cutoff: number): Promise<number> {
+  const stateRef = db.doc(BACKFILL_DOC);
+  const state = (await stateRef.get()).data();
+  if (state?.done) return 0;
+
+  const query = db.collectionGroup('children')
+    .orderBy(admin.firestore.FieldPath.documentId())
+    .select('isOnline', 'lastSeen', 'deviceInfo.lastSync')
+    .limit(BATCH_SIZE);
+  let cursor: string | undefined = state?.cursor;
+  let updated = 0;
+
+  for (let page = 0; page < MAX_PAGES_PER_RUN; page++) {
+    const snapshot = await (cursor ? query.startAfter(db.doc(cursor)) : query).get();
+
+    const batch = db.batch();
+    let batched = 0;
+    snapshot.docs.forEach(doc => {
+      // The collection group also holds the top-level children/{childUid} metadata docs
+      if (doc.ref.parent.parent?.parent.id !== 'users') return;
+      if (typeof doc.get('isOnline') === 'boolean') return;
+
+      let lastSeen = doc.get('lastSeen');
+      const update: { [key: string]: any } = {};
+      if (typeof lastSeen !== 'number') {
+        lastSeen = Date.parse(doc.get('deviceInfo.lastSync')) || 0;
+        update.lastSeen = lastSeen;
+      }
+      update.isOnline = lastSeen >= cutoff;
+      update['deviceInfo.onlineStatus'] = update.isOnline ? 'online' : 'offline';
+      batch.update(doc.ref, update);
+      batched++;
+    });
+    if (batched > 0) {
+      await batch.commit();
+      updated += batched;
+    }
+
+    if (snapshot.size < BATCH_SIZE) {
+      await stateRef.set({ done: true, cursor: null, finishedAt: admin.firestore.FieldValue.serverTimestamp() }, { merge: true });
+      return updated;
+    }
+    cursor = snapshot.docs[snapshot.docs.length - 1].ref.path;
+  }
+
+  await stateRef.set({ done: false, cursor }, { merge: true });
+  return updated;
+}
@@ -0,0 +1,190 @@
+import * as functions from 'firebase-functions';
+import { admin, db } from '../firebase';
+
+const DAY_MS = 24 * 60 * 60 * 1000;
+const BATCH_SIZE = 500;
+// Leaves headroom under the function timeout to save the cursor
+const RUN_BUDGET_MS = 7 * 60 * 1000;
+
+export const RETENTION_DOC = 'maintenance/retention';
+
+interface RetentionPolicy {
+  name: string;
+  // A collection group, or a top-level collection when topLevel is set
+  collection: string;
+  topLevel?: boolean;
+  field: string;
+  // 'millis' for client-written Date.now() numbers, 'timestamp' for Firestore timestamps
+  fieldType: 'millis' | 'timestamp';
+  maxAgeMs: number;
+  // Limits a collection group to documents under a given parent collection
+  parentCollection?: string;
+  // Older documents were written without the field and never match the range query, so a
+  // one-off pass first stamps it from each document's createTime
+  backfillField?: boolean;
+}
+
+// Deleted oldest first, one policy after another. The collection-group range queries use
+// the single-field overrides in firestore.indexes.json.
+export const RETENTION_POLICIES: RetentionPolicy[] = [
+  { name: 'monitoring', collection: 'monitoring', field: 'timestamp', fieldType: 'millis', maxAgeMs: 30 * DAY_MS },
+  { name: 'errors', collection: 'errors', field: 'timestamp', fieldType: 'millis', maxAgeMs: 30 * DAY_MS, backfillField: true },
+  { name: 'responses', collection: 'responses', field: 'timestamp', fieldType: 'millis', maxAgeMs: 14 * DAY_MS, backfillField: true },
+  { name: 'webrtcSignals', collection: 'signals', field: 'createdAt', fieldType: 'timestamp', maxAgeMs: DAY_MS, parentCollection: 'webrtcSignals' },
+  { name: 'pairingRequests', collection: 'pairingRequests', topLevel: true, field: 'createdAt', fieldType: 'timestamp', maxAgeMs: 7 * DAY_MS },
+];
+
+type FieldValue = number | admin.firestore.Timestamp;
+
+// Persisted in maintenance/retention so a run that hits its budget resumes where it stopped:
+// the policy it was on and the last deleted document (value and path, since values tie),
+// which also keeps later queries from scanning over the tombstones of documents already
+// deleted. A cursor without a value is a policy paused in its backfill pass.
+interface RetentionCursor {
+  policy: string;
+  after: FieldValue | null;
+  afterPath: string | null;
+}
+
+// Progress of a policy's backfillField pass, kept under backfill.{policy} in RETENTION_DOC
+interface BackfillState {
+  done: boolean;
+  cursor: string | null;
+}
+
+export async function runRetention(context: functions.EventContext) {
+  const startedAt = Date.now();
+  const retentionRef = db.doc(RETENTION_DOC);
+  const state = (await retentionRef.get()).data();
+  const cursor: RetentionCursor | null = state?.cursor || null;
+  const backfills: { [name: string]: BackfillState } = state?.backfill || {};
+
+  let startIndex = cursor ? RETENTION_POLICIES.findIndex(policy => policy.name === cursor.policy) : 0;
+  if (startIndex < 0) startIndex = 0;
+
+  const deadline = startedAt + RUN_BUDGET_MS;
+  const deleted: { [name: string]: number } = {};
+  let nextCursor: RetentionCursor | null = null;
+
+  for (let i = startIndex; i < RETENTION_POLICIES.length; i++) {
+    const policy = RETENTION_POLICIES[i];
+
+    if (policy.backfillField && !backfills[policy.name]?.done) {
+      backfills[policy.name] = await backfill(policy, backfills[policy.name]?.cursor || null, deadline);
+      if (!backfills[policy.name].done) {
+        nextCursor = { policy: policy.name, after: null, afterPath: null };
+        break;
+      }
+    }
+
+    const resume = cursor && cursor.policy === policy.name && cursor.afterPath ? cursor : null;
+    const result = await purge(policy, resume, deadline);
+    deleted[policy.name] = result.deleted;
+    if (result.resumeAfter !== null) {
+      nextCursor = result.resumeAfter;
+      break;
+    }
+  }
+
+  const totals: { [key: string]: admin.firestore.FieldValue } = {};
+  for (const name in deleted) {
+    totals[name] = admin.firestore.FieldValue.increment(deleted[name]);
+  }
+  await retentionRef.set({
+    cursor: nextCursor,
+    backfill: backfills,
+    lastRun: {
+      startedAt: admin.firestore.Timestamp.fromMillis(startedAt),
+      finishedAt: admin.firestore.FieldValue.serverTimestamp(),
+      complete: nextCursor === null,
+      deleted,
+    },
+    totalDeleted: totals,
+  }, { merge: true });
+
+  console.log(`Retention run ${nextCursor ? 'paused at ' + nextCursor.policy : 'complete'}:`, deleted);
+  return null;
+}
+
+// Deletes expired documents of one policy in batches of BATCH_SIZE. Returns the cursor to
+// resume after when the deadline is reached, or null once nothing expired is left.
+async function purge(policy: RetentionPolicy, resume: RetentionCursor | null, deadline: number) {
+  const cutoffMs = Date.now() - policy.maxAgeMs;
+  const cutoff = policy.fieldType === 'millis' ? cutoffMs : admin.firestore.Timestamp.fromMillis(cutoffMs);
+  const source = policy.topLevel ? db.collection(policy.collection) : db.collectionGroup(policy.collection);
+
+  // Ordered by document path after the field, so documents sharing a value are neither
+  // skipped nor revisited when a page or a run ends among them
+  const query = source.where(policy.field, '<', cutoff)
+    .orderBy(policy.field)
+    .orderBy(admin.firestore.FieldPath.documentId())
+    .select(policy.field)
+    .limit(BATCH_SIZE);
+
+  let deleted = 0;
+  let after: RetentionCursor | null = resume;
+  for (;;) {
+    if (Date.now() >= deadline) {
+      return { deleted, resumeAfter: after };
+    }
+
+    const page = await (after ? query.startAfter(after.after, db.doc(after.afterPath!)) : query).get();
+    if (page.empty) break;
+
+    const batch = db.batch();
+    let batched = 0;
+    page.docs.forEach(doc => {
+      if (policy.parentCollection && doc.ref.parent.parent?.parent.id !== policy.parentCollection) return;
+      batch.delete(doc.ref);
+      batched++;
+    });
+    if (batched > 0) {
+      await batch.commit();
+      deleted += batched;
+    }
+    const last = page.docs[page.docs.length - 1];
+    after = { policy: policy.name, after: last.get(policy.field) as FieldValue, afterPath: last.ref.path };
+
+    if (page.size < BATCH_SIZE) break;
+  }
+  return { deleted, resumeAfter: null };
+}
+
+// Walks every document of the policy once in document-path order and stamps the missing
+// field from createTime, so the range query in purge() can see it. Returns the pass state,
+// with the path to resume after when the deadline is reached first.
+async function backfill(policy: RetentionPolicy, cursor: string | null, deadline: number): Promise<BackfillState> {
+  const source = policy.topLevel ? db.collection(policy.collection) : db.collectionGroup(policy.collection);
+  const query = source.orderBy(admin.firestore.FieldPath.documentId()).select(policy.field).limit(BATCH_SIZE);
+
+  let updated = 0;
+  for (;;) {
+    if (Date.now() >= deadline) {
+      console.log(`Retention backfill of ${policy.name} paused after ${updated} documents.`);
+      return { done: false, cursor };
+    }
+
+    const page = await (cursor ? query.startAfter(db.doc(cursor)) : query).get();
+
+    const batch = db.batch();
+    let batched = 0;
+    page.docs.forEach(doc => {
+      if (doc.get(policy.field) !== undefined) return;
+      const createdMs = doc.createTime.toMillis();
+      batch.update(doc.ref, {
+        [policy.field]: policy.fieldType === 'millis' ? createdMs : admin.firestore.Timestamp.fromMillis(createdMs),
+      });
+      batched++;
+    });
+    if (batched > 0) {
+      await batch.commit();
+      updated += batched;
+    }
+
+    if (page.size < BATCH_SIZE) {
+      console.log(`Retention backfill of ${policy.name} complete, ${updated} documents stamped.`);
+      return { done: true, cursor: null };
+    }
+    cursor = page.docs[page.docs.length - 1].ref.path;
+  }
+}
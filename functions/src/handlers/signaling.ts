@@ -0,0 +1,28 @@
+import * as functions from 'firebase-functions';
+import { admin, db } from '../firebase';
+
+export async function sendWebRTCSignal(data: any, context: functions.https.CallableContext) {
+    if (!context.auth) {
+        throw new functions.https.HttpsError('unauthenticated', 'The request must be authenticated.');
+    }
+
+    const { targetUid, signal } = data;
+
+    if (!targetUid || !signal) {
+        throw new functions.https.HttpsError('invalid-argument', 'Missing targetUid or signal data.');
+    }
+
+    const senderUid = context.auth.uid;
+
+    // Securely store the signal in a way that only the target user can read it.
+    // For this example, we'll use a subcollection that both users have access to.
+    const signalRef = db.collection('webrtcSignals').doc(targetUid).collection('signals').doc();
+
+    await signalRef.set({
+        senderUid,
+        signal,
+        createdAt: admin.firestore.FieldValue.serverTimestamp(),
+    });
+
+    return { status: 'success', message: 'Signal sent.' };
+}
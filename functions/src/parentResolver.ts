@@ -0,0 +1,59 @@
+import * as functions from 'firebase-functions';
+import * as admin from 'firebase-admin';
+
+// Per-instance cache of childUid -> parentUid. Entries expire so an unpair handled by
+// another instance is picked up within CACHE_TTL_MS.
+const CACHE_TTL_MS = 10 * 60 * 1000;
+const CACHE_MAX_ENTRIES = 1000;
+
+const parentUidCache = new Map<string, { parentUid: string; expiresAt: number }>();
+
+// ID tokens outlive an unpair or re-link by up to an hour (revoking refresh tokens does not
+// revoke them), so a parentUid claim is only trusted on its own while the token is younger
+// than this, the same staleness the cache already accepts.
+const CLAIM_TRUST_MS = CACHE_TTL_MS;
+
+// Resolves the parent of an authenticated child. A claim in a recently issued token is used
+// as is; otherwise the cache or children/{childUid} decides, and wins over a disagreeing claim.
+export async function resolveParentUid(auth: { uid: string; token: { [key: string]: any } }): Promise<string> {
+  const childUid = auth.uid;
+
+  const claimed = auth.token.parentUid;
+  const issuedAtMs = (auth.token.iat || 0) * 1000;
+  if (typeof claimed === 'string' && claimed && Date.now() - issuedAtMs < CLAIM_TRUST_MS) {
+    return claimed;
+  }
+
+  const cached = parentUidCache.get(childUid);
+  if (cached && cached.expiresAt > Date.now()) {
+    // Re-insert so Map iteration order tracks recency
+    parentUidCache.delete(childUid);
+    parentUidCache.set(childUid, cached);
+    return cached.parentUid;
+  }
+  parentUidCache.delete(childUid);
+
+  const childMetaDoc = await admin.firestore().collection('children').doc(childUid).get();
+  if (!childMetaDoc.exists) {
+    throw new functions.https.HttpsError('not-found', 'Child device metadata not found.');
+  }
+  const parentUid = childMetaDoc.data()?.parentUid;
+  if (!parentUid) {
+    throw new functions.https.HttpsError('failed-precondition', 'Parent UID not found for this child.');
+  }
+
+  if (typeof claimed === 'string' && claimed && claimed !== parentUid) {
+    console.warn(`Stale parentUid claim for child ${childUid}, using the children document.`);
+  }
+
+  parentUidCache.set(childUid, { parentUid, expiresAt: Date.now() + CACHE_TTL_MS });
+  if (parentUidCache.size > CACHE_MAX_ENTRIES) {
+    const oldest = parentUidCache.keys().next().value;
+    if (oldest !== undefined) parentUidCache.delete(oldest);
+  }
+  return parentUid;
+}
+
+export function invalidateParentUid(childUid: string) {
+  parentUidCache.delete(childUid);
+}
@@ -0,0 +1,97 @@
+import * as admin from 'firebase-admin';
+import * as jose from 'jose';
+import { importKey } from './cryptoService';
+
+export const KEYS_COLLECTION = 'signingKeys';
+// The current key pair; every version is also kept as signingKeys/{keyVersion}
+export const KEY_DOC = 'defaultPair';
+
+// How long an instance signs with its cached key before picking up a rotation. Signatures
+// carry their key version as the kid, so one made with the previous key still verifies.
+const CACHE_TTL_MS = 5 * 60 * 1000;
+// Minimum gap between lookups of kids that turned out not to exist; the kid comes from the
+// caller, so without this every forged one would cost a Firestore read
+const MISSING_KID_RETRY_MS = 30 * 1000;
+const MAX_CACHED_VERSIONS = 20;
+
+export interface SigningKeys {
+  version: string;
+  privateKey: jose.KeyLike;
+  publicKey: jose.KeyLike;
+}
+
+let cached: { keys: SigningKeys; loadedAt: number } | null = null;
+let loading: Promise<SigningKeys> | null = null;
+// Public keys of earlier versions, by kid. Version docs never change, so entries never expire.
+const versionKeys = new Map<string, jose.KeyLike>();
+let lastMissAt = 0;
+
+// The current pair, imported and cached per instance for CACHE_TTL_MS.
+export async function getSigningKeys(): Promise<SigningKeys | null> {
+  if (cached && Date.now() - cached.loadedAt < CACHE_TTL_MS) {
+    return cached.keys;
+  }
+
+  // Concurrent cold calls share one Firestore read and import
+  if (!loading) {
+    loading = loadKeys().finally(() => { loading = null; });
+  }
+  try {
+    return await loading;
+  } catch (error) {
+    if ((error as Error).message === 'not-found') return null;
+    throw error;
+  }
+}
+
+// Public key for the kid of a JWS being verified. Signatures without a kid predate
+// versioning and are checked against the current key.
+export async function getVerificationKey(kid?: string): Promise<jose.KeyLike | null> {
+  const current = await getSigningKeys();
+  if (!kid || current?.version === kid) return current ? current.publicKey : null;
+
+  const known = versionKeys.get(kid);
+  if (known) return known;
+  if (kid === KEY_DOC || Date.now() - lastMissAt < MISSING_KID_RETRY_MS) return null;
+
+  const versionDoc = await admin.firestore().collection(KEYS_COLLECTION).doc(kid).get();
+  if (!versionDoc.exists) {
+    lastMissAt = Date.now();
+    return null;
+  }
+  const publicKey = await importKey(versionDoc.data()!.publicKey, 'ES256') as jose.KeyLike;
+  if (versionKeys.size >= MAX_CACHED_VERSIONS) {
+    versionKeys.delete(versionKeys.keys().next().value!);
+  }
+  versionKeys.set(kid, publicKey);
+  return publicKey;
+}
+
+export function invalidateSigningKeys() {
+  cached = null;
+}
+
+async function loadKeys(): Promise<SigningKeys> {
+  const keyPairDoc = await admin.firestore().collection(KEYS_COLLECTION).doc(KEY_DOC).get();
+  if (!keyPairDoc.exists) {
+    cached = null;
+    throw new Error('not-found');
+  }
+  const data = keyPairDoc.data()!;
+  // Key pairs stored before versioning fall back to the document's update time
+  const version = data.keyVersion || String(keyPairDoc.updateTime!.toMillis());
+
+  if (cached && cached.keys.version === version) {
+    cached.loadedAt = Date.now();
+    return cached.keys;
+  }
+
+  const keys: SigningKeys = {
+    version,
+    // EC JWKs always import as KeyLike (only symmetric keys come back as Uint8Array)
+    privateKey: await importKey(data.privateKey, 'ES256') as jose.KeyLike,
+    publicKey: await importKey(data.publicKey, 'ES256') as jose.KeyLike,
+  };
+  cached = { keys, loadedAt: Date.now() };
+  return keys;
+}
@@ -0,0 +1,193 @@
+import * as admin from 'firebase-admin';
+
+// Rollup documents live next to the daily appUsage docs, one per calendar period:
+//   week-2026-W07, month-2026-02
+// Longer ranges are summed from monthly docs at read time (at most 13 for a year).
+// Each holds { total, days: { YYYY-MM-DD: ms }, apps: { appName: ms } }, all maintained with
+// FieldValue.increment, and weekly docs also keep dailyApps so a 7-day range stays exact.
+export const ROLLUPS_COLLECTION = 'appUsageRollups';
+
+// Hour-of-day x day-of-week histogram in the child's local time, one doc per child:
+//   { cells: { '<day 0-6>_<hour 0-23>': ms } }
+// At most 168 keys, so peak usage is a single-document read.
+export const HISTOGRAM_DOC = 'histogram';
+
+// Marks a child whose rollups have been rebuilt from its daily appUsage docs
+export const BACKFILL_DOC = 'backfill';
+// Covers the longest insights range
+const BACKFILL_DAYS = 366;
+
+const DAY_NAMES = ['Sunday', 'Monday', 'Tuesday', 'Wednesday', 'Thursday', 'Friday', 'Saturday'];
+
+export type Granularity = 'week' | 'month';
+
+export const RANGE_DAYS: { [timeRange: string]: number } = {
+  last7days: 7,
+  last30days: 30,
+  last90days: 90,
+  last365days: 365,
+};
+
+export function toDateString(date: Date): string {
+  return date.toISOString().split('T')[0]; // YYYY-MM-DD format
+}
+
+// Period key for a UTC date. Weeks follow ISO-8601 (Monday start, week of the Thursday).
+export function periodKey(date: Date, granularity: Granularity): string {
+  const year = date.getUTCFullYear();
+  switch (granularity) {
+    case 'week': {
+      const thursday = new Date(Date.UTC(year, date.getUTCMonth(), date.getUTCDate()));
+      thursday.setUTCDate(thursday.getUTCDate() + 3 - ((thursday.getUTCDay() + 6) % 7));
+      const weekYear = thursday.getUTCFullYear();
+      const week = Math.ceil(((thursday.getTime() - Date.UTC(weekYear, 0, 1)) / 86400000 + 1) / 7);
+      return `week-${weekYear}-W${String(week).padStart(2, '0')}`;
+    }
+    case 'month':
+      return `month-${year}-${String(date.getUTCMonth() + 1).padStart(2, '0')}`;
+  }
+}
+
+// Weeks for ranges that fit in one or two of them, months otherwise. Only weekly and monthly
+// rollups are written, to keep recordAppUsage at daily + weekly + monthly writes; a 365-day
+// range touches at most 13 monthly docs.
+export function granularityFor(days: number): Granularity {
+  return days <= 7 ? 'week' : 'month';
+}
+
+// Adds the usage of one upload to every rollup period containing `date`.
+export function addToRollups(
+  batch: admin.firestore.WriteBatch,
+  rollupsRef: admin.firestore.CollectionReference,
+  date: Date,
+  usageByApp: { [appName: string]: number }
+) {
+  const increment = admin.firestore.FieldValue.increment;
+  const day = toDateString(date);
+  const total = Object.values(usageByApp).reduce((sum, ms) => sum + ms, 0);
+
+  const apps: { [appName: string]: admin.firestore.FieldValue } = {};
+  for (const appName in usageByApp) {
+    apps[appName] = increment(usageByApp[appName]);
+  }
+
+  const granularities: Granularity[] = ['week', 'month'];
+  for (const granularity of granularities) {
+    const update: { [key: string]: any } = {
+      total: increment(total),
+      days: { [day]: increment(total) },
+      apps,
+      lastUpdated: admin.firestore.FieldValue.serverTimestamp(),
+    };
+    if (granularity === 'week') {
+      update.dailyApps = { [day]: apps };
+    }
+    batch.set(rollupsRef.doc(periodKey(date, granularity)), update, { merge: true });
+  }
+}
+
+// Rebuilds a child's rollups from its daily appUsage docs, for children whose usage was
+// recorded before rollups existed. Runs as a transaction over the daily docs it reads, so a
+// concurrent recordAppUsage (which writes today's daily doc) makes it retry instead of being
+// lost, and rollup docs are overwritten with absolute values. The hour histogram cannot be
+// rebuilt: daily docs carry no time of day.
+export async function backfillRollups(db: admin.firestore.Firestore, childRef: admin.firestore.DocumentReference) {
+  const rollupsRef = childRef.collection(ROLLUPS_COLLECTION);
+  const since = toDateString(new Date(Date.now() - BACKFILL_DAYS * 86400000));
+
+  await db.runTransaction(async transaction => {
+    const marker = await transaction.get(rollupsRef.doc(BACKFILL_DOC));
+    if (marker.exists) return;
+
+    const dailyDocs = await transaction.get(
+      childRef.collection('appUsage').where(admin.firestore.FieldPath.documentId(), '>=', since)
+    );
+
+    const periods: { [key: string]: { total: number; days: any; apps: any; dailyApps?: any } } = {};
+    dailyDocs.forEach(doc => {
+      const day = doc.id;
+      const date = new Date(`${day}T00:00:00Z`);
+      if (isNaN(date.getTime())) return;
+
+      const apps: { [appName: string]: number } = {};
+      let total = 0;
+      const usage = doc.data();
+      for (const appName in usage) {
+        if (typeof usage[appName] !== 'number') continue; // lastUpdated
+        apps[appName] = usage[appName];
+        total += usage[appName];
+      }
+
+      const granularities: Granularity[] = ['week', 'month'];
+      for (const granularity of granularities) {
+        const key = periodKey(date, granularity);
+        const period = periods[key] || (periods[key] = { total: 0, days: {}, apps: {} });
+        period.total += total;
+        period.days[day] = total;
+        for (const appName in apps) {
+          period.apps[appName] = (period.apps[appName] || 0) + apps[appName];
+        }
+        if (granularity === 'week') {
+          period.dailyApps = { ...period.dailyApps, [day]: apps };
+        }
+      }
+    });
+
+    for (const key in periods) {
+      transaction.set(rollupsRef.doc(key), { ...periods[key], lastUpdated: admin.firestore.FieldValue.serverTimestamp() });
+    }
+    transaction.set(rollupsRef.doc(BACKFILL_DOC), {
+      days: dailyDocs.size,
+      backfilledAt: admin.firestore.FieldValue.serverTimestamp(),
+    });
+  });
+}
+
+// Adds an upload to the histogram. hourlyUsage holds the device's per-hour split of the
+// upload, keyed by local '<day>_<hour>' cell. Older clients send none; their whole upload is
+// attributed to the child's current local hour.
+export function addToHistogram(
+  batch: admin.firestore.WriteBatch,
+  rollupsRef: admin.firestore.CollectionReference,
+  date: Date,
+  tzOffsetMinutes: number,
+  total: number,
+  hourlyUsage?: { [cell: string]: number }
+) {
+  const cells: { [cell: string]: admin.firestore.FieldValue } = {};
+  for (const cell in hourlyUsage || {}) {
+    const ms = hourlyUsage![cell];
+    const [day, hour] = cell.split('_').map(Number);
+    if (typeof ms === 'number' && ms > 0 && day >= 0 && day < 7 && hour >= 0 && hour < 24) {
+      cells[`${day}_${hour}`] = admin.firestore.FieldValue.increment(ms);
+    }
+  }
+  if (Object.keys(cells).length === 0) {
+    const local = new Date(date.getTime() + tzOffsetMinutes * 60000);
+    cells[`${local.getUTCDay()}_${local.getUTCHours()}`] = admin.firestore.FieldValue.increment(total);
+  }
+  batch.set(rollupsRef.doc(HISTOGRAM_DOC), {
+    cells,
+    lastUpdated: admin.firestore.FieldValue.serverTimestamp(),
+  }, { merge: true });
+}
+
+export function peakFromHistogram(cells: { [cell: string]: number } | undefined) {
+  const byHour = new Array(24).fill(0);
+  const byDay = new Array(7).fill(0);
+  for (const cell in cells || {}) {
+    const [day, hour] = cell.split('_').map(Number);
+    if (day >= 0 && day < 7 && hour >= 0 && hour < 24) {
+      byHour[hour] += cells![cell];
+      byDay[day] += cells![cell];
+    }
+  }
+
+  if (byHour.every(ms => ms === 0)) {
+    return { time: 'Not enough data', day: 'Not enough data' };
+  }
+  const peakHour = byHour.indexOf(Math.max(...byHour));
+  const peakDay = byDay.indexOf(Math.max(...byDay));
+  const pad = (hour: number) => `${String(hour % 24).padStart(2, '0')}:00`;
+  return { time: `${pad(peakHour)} - ${pad(peakHour + 1)}`, day: DAY_NAMES[peakDay] };
+}
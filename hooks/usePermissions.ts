@@ -1,58 +1,81 @@
-
 import { useState, useEffect, useCallback } from 'react';
-import { NativeModules } from 'react-native';
+import { NativeModules, NativeEventEmitter, PermissionsAndroid, Permission } from 'react-native';
 
 const { PermissionsModule } = NativeModules;
+const permissionEvents = new NativeEventEmitter(PermissionsModule);
+
+// Map hook permission names to the keys of the native permission snapshot
+const snapshotKeys = {
+  location: 'Location',
+  callLog: 'CallLog',
+  sms: 'Sms',
+  storage: 'Storage',
+  camera: 'Camera',
+  audio: 'Microphone',
+  usageStats: 'UsageStats',
+  accessibility: 'Accessibility',
+  notification: 'Notification',
+  deviceAdmin: 'DeviceAdmin',
+};
 
-// Define a mapping from permission names to their IDs
-const permissionIds = {
-  location: "android.permission.ACCESS_FINE_LOCATION",
-  callLog: "android.permission.READ_CALL_LOG",
-  sms: "android.permission.READ_SMS",
-  storage: "android.permission.READ_EXTERNAL_STORAGE",
-  camera: "android.permission.CAMERA",
-  audio: "android.permission.RECORD_AUDIO",
-  usageStats: "android.permission.PACKAGE_USAGE_STATS",
-  accessibility: "android.permission.BIND_ACCESSIBILITY_SERVICE",
-  notification: "android.permission.BIND_NOTIFICATION_LISTENER_SERVICE",
-  deviceAdmin: "android.permission.BIND_DEVICE_ADMIN",
+// Runtime permissions are requested in-app, the rest need a system settings screen
+const runtimePermissionIds: Partial<Record<keyof typeof snapshotKeys, Permission>> = {
+  location: PermissionsAndroid.PERMISSIONS.ACCESS_FINE_LOCATION,
+  callLog: PermissionsAndroid.PERMISSIONS.READ_CALL_LOG,
+  sms: PermissionsAndroid.PERMISSIONS.READ_SMS,
+  storage: PermissionsAndroid.PERMISSIONS.READ_EXTERNAL_STORAGE,
+  camera: PermissionsAndroid.PERMISSIONS.CAMERA,
+  audio: PermissionsAndroid.PERMISSIONS.RECORD_AUDIO,
 };
 
-export const usePermissions = (requestedPermissions: (keyof typeof permissionIds)[]) => {
+export const usePermissions = (requestedPermissions: (keyof typeof snapshotKeys)[]) => {
   const [permissions, setPermissions] = useState<Record<string, boolean>>({});
   const [allPermissionsGranted, setAllPermissionsGranted] = useState(false);
 
-  const checkAllPermissions = useCallback(async () => {
+  // Callers usually pass a fresh array literal; key on its contents so effects don't re-run every render
+  const requestedKey = requestedPermissions.join(',');
+
+  const applySnapshot = useCallback((snapshot: Record<string, boolean>) => {
     const newPermissions: Record<string, boolean> = {};
     let allGranted = true;
 
     for (const key of requestedPermissions) {
-      const permissionId = permissionIds[key];
-      if (permissionId) {
-        const isGranted = await PermissionsModule.isPermissionGranted(permissionId);
-        newPermissions[key] = isGranted;
-        if (!isGranted) {
-          allGranted = false;
-        }
+      const isGranted = !!snapshot[snapshotKeys[key]];
+      newPermissions[key] = isGranted;
+      if (!isGranted) {
+        allGranted = false;
       }
     }
 
     setPermissions(newPermissions);
     setAllPermissionsGranted(allGranted);
-  }, [requestedPermissions]);
+    // eslint-disable-next-line react-hooks/exhaustive-deps
+  }, [requestedKey]);
+
+  const checkAllPermissions = useCallback(async () => {
+    applySnapshot(await PermissionsModule.checkAllPermissions());
+  }, [applySnapshot]);
 
   useEffect(() => {
     checkAllPermissions();
-  }, [checkAllPermissions]);
+    // The native side pushes a new snapshot whenever a permission changes, no polling needed
+    const subscription = permissionEvents.addListener('PermissionsChanged', applySnapshot);
+    return () => subscription.remove();
+  }, [checkAllPermissions, applySnapshot]);
 
   const requestAllPermissions = async () => {
-    for (const key of requestedPermissions) {
-      const permissionId = permissionIds[key];
-      if (permissionId && !permissions[key]) {
-        await PermissionsModule.requestPermission(permissionId);
-      }
+    const missingRuntime = requestedPermissions
+      .filter(key => !permissions[key] && runtimePermissionIds[key])
+      .map(key => runtimePermissionIds[key] as Permission);
+    if (missingRuntime.length > 0) {
+      await PermissionsAndroid.requestMultiple(missingRuntime);
+    }
+
+    // Settings screens can only be shown one at a time; PermissionsChanged updates the list when the user returns
+    const missingSpecial = requestedPermissions.find(key => !permissions[key] && !runtimePermissionIds[key]);
+    if (missingSpecial) {
+      PermissionsModule.openSpecificPermission(snapshotKeys[missingSpecial]);
     }
-    await checkAllPermissions(); // Re-check all permissions after requesting
   };
 
   return {
@@ -1,16 +1,23 @@
-
-import { NativeModules } from 'react-native';
-
-const { SharedPreferences } = NativeModules;
+import SharedPreferences from '../services/SharedPreferences';
 
 export const useSharedPreferences = () => {
   const setItem = async (key: string, value: string) => {
-    await SharedPreferences.setItem(key, value);
+    await SharedPreferences.setString(key, value);
   };
 
   const getItem = async (key: string, defaultValue: string) => {
-    return await SharedPreferences.getItem(key, defaultValue);
+    const value = await SharedPreferences.getString(key);
+    return value ?? defaultValue;
+  };
+
+  // One bridge round-trip for any number of keys
+  const getItems = async (keys: string[]) => {
+    return await SharedPreferences.multiGet(keys);
+  };
+
+  const setItems = async (values: Record<string, string | number | boolean | null>) => {
+    await SharedPreferences.multiSet(values);
   };
 
-  return { setItem, getItem };
+  return { setItem, getItem, getItems, setItems };
 };
@@ -9,6 +9,38 @@ const SharedPreferences = {
   getString: (key) => {
     return SharedPreferencesModule.getString(key);
   },
+
+  // Reads several keys in one bridge call. Values keep their stored type; missing keys are null.
+  multiGet: (keys) => {
+    return SharedPreferencesModule.multiGet(keys);
+  },
+  // Writes every entry of the object with a single native commit. A null value removes the key.
+  multiSet: (values) => {
+    return SharedPreferencesModule.multiSet(values);
+  },
+
+  setBool: (key, value) => {
+    return SharedPreferencesModule.multiSet({ [key]: !!value });
+  },
+  getBool: async (key) => {
+    const values = await SharedPreferencesModule.multiGet([key]);
+    // Older builds stored flags as the string 'true'
+    return values[key] === true || values[key] === 'true';
+  },
+  setNumber: (key, value) => {
+    return SharedPreferencesModule.multiSet({ [key]: value });
+  },
+  getNumber: async (key) => {
+    const values = await SharedPreferencesModule.multiGet([key]);
+    return typeof values[key] === 'number' ? values[key] : null;
+  },
+  setJSON: (key, value) => {
+    return SharedPreferencesModule.multiSet({ [key]: JSON.stringify(value) });
+  },
+  getJSON: async (key) => {
+    const values = await SharedPreferencesModule.multiGet([key]);
+    return typeof values[key] === 'string' ? JSON.parse(values[key]) : null;
+  },
 };
 
 export default SharedPreferences;
@@ -1,5 +1,5 @@
 import { getFunctions, httpsCallable, connectFunctionsEmulator } from 'firebase/functions';
-import { app } from './firebaseConfig'; // Assuming 'app' is exported from firebaseConfig.ts
+import { app, auth } from './firebaseConfig'; // Assuming 'app' is exported from firebaseConfig.ts
 
 const functions = getFunctions(app);
 
@@ -16,5 +16,35 @@ if (__DEV__) {
   }
 }
 
+const linkChildDeviceCallable = httpsCallable<any, { status: string, message: string }>(functions, 'linkChildDevice');
+const updateDeviceStatusCallable = httpsCallable<any, { status: string, message: string }>(functions, 'updateDeviceStatus');
+
+// Linking and unpairing change the parentUid custom claim. The server only trusts a claim in a
+// recently issued token, so refresh right away instead of sending the old token for up to an hour.
+async function refreshIdToken() {
+  try {
+    await auth.currentUser?.getIdToken(true);
+  } catch (error) {
+    // Fails once an unpair has revoked the refresh token; the SDK then signs the child out
+    console.warn('Could not refresh ID token:', error);
+  }
+}
+
 // Callable function to link a child device
-export const linkChildDevice = httpsCallable<any, { status: string, message: string }>(functions, 'linkChildDevice');
\ No newline at end of file
+export async function linkChildDevice(data: any) {
+  const result = await linkChildDeviceCallable(data);
+  await refreshIdToken();
+  return result;
+}
+
+// Heartbeat status update. not-found means the parent unpaired this device.
+export async function updateDeviceStatus(data: any) {
+  try {
+    return await updateDeviceStatusCallable(data);
+  } catch (error: any) {
+    if (error?.code === 'functions/not-found') {
+      await refreshIdToken();
+    }
+    throw error;
+  }
+}
\ No newline at end of file
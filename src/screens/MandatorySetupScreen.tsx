@@ -1,8 +1,8 @@
 
 import React from 'react';
 import { SafeAreaView, StyleSheet, View, Text, Button } from 'react-native';
-import { usePermissions } from '../hooks/usePermissions';
-import SharedPreferences from '../services/SharedPreferences';
+import { usePermissions } from '../../hooks/usePermissions';
+import SharedPreferences from '../../services/SharedPreferences';
 
 interface MandatorySetupScreenProps {
   onSetupComplete: () => void;
@@ -7,13 +7,27 @@ const { UsageStatsModule } = NativeModules;
 
 const recordAppUsage = httpsCallable(functions, 'recordAppUsage');
 
-export const getAndSendAppUsage = async () => {
+// The AppState refresh and the hourly interval can fire together; they share one run
+let inFlight: Promise<void> | null = null;
+
+export const getAndSendAppUsage = () => {
+  if (!inFlight) {
+    inFlight = sendAppUsage().finally(() => { inFlight = null; });
+  }
+  return inFlight;
+};
+
+const sendAppUsage = async () => {
   try {
-    const usageStats = await UsageStatsModule.getUsageStats();
+    // Foreground time per package since the last acknowledged upload
+    const { usageStats, hourlyUsage, token } = await UsageStatsModule.getUsageStats();
     if (usageStats && usageStats.length > 0) {
-      await recordAppUsage({ usageStats });
+      // getTimezoneOffset() is minutes behind UTC, the server expects minutes ahead
+      await recordAppUsage({ usageStats, hourlyUsage, tzOffsetMinutes: -new Date().getTimezoneOffset() });
       console.log('App usage stats sent successfully');
     }
+    // Only advance the native cursor once the deltas are safely recorded
+    await UsageStatsModule.acknowledgeUsageStats(token);
   } catch (error) {
     console.error('Error getting or sending app usage stats:', error);
   }
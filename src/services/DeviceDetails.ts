@@ -24,22 +24,21 @@ async function requestLocationPermission() {
 
 export const getDeviceDetails = async () => {
   try {
-    const deviceName = await DeviceDetailsModule.getDeviceName();
-    const deviceType = await DeviceDetailsModule.getDeviceType();
-    const osVersion = await DeviceDetailsModule.getOsVersion();
-    const ipAddress = await DeviceDetailsModule.getIpAddress();
-    const { batteryLevel, isCharging } = await DeviceDetailsModule.getBatteryDetails();
-
-    let location = null;
     const hasPermission = await requestLocationPermission();
-    if (hasPermission) {
-        try {
-            location = await DeviceDetailsModule.getCurrentLocation();
-        } catch(e) {
-            console.log('Could not get location', e)
-        }
-    }
+    // One bridge call; the native side collects every field concurrently
+    const {
+      deviceName,
+      deviceType,
+      osVersion,
+      ipAddress,
+      batteryLevel,
+      isCharging,
+      location,
+    } = await DeviceDetailsModule.getAll(hasPermission);
 
+    if (hasPermission && !location) {
+      console.log('Could not get location');
+    }
 
     return {
       deviceName,
@@ -50,7 +49,7 @@ export const getDeviceDetails = async () => {
       isCharging,
       lastSync: new Date().toISOString(),
       onlineStatus: 'online',
-      location
+      location: location ?? null
     };
   } catch (error) {
     console.error('Error fetching device details:', error);
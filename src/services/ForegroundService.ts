@@ -1,3 +1,7 @@
 import { NativeModules } from 'react-native';
+
+// startService(): starts GuardianService, the always-on foreground host.
+// stopStreams(): ends camera/screen streaming only; the service keeps running.
+// stopService() is a deprecated alias of stopStreams() and no longer stops the service.
 const { ForegroundService } = NativeModules;
 export default ForegroundService;
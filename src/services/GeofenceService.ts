@@ -46,7 +46,25 @@ const removeGeofence = async (geofenceId: string): Promise<string> => {
   }
 };
 
+/**
+ * Replaces the monitored geofences with the given list. Only the differences against the
+ * fences already registered on the device are applied.
+ * @param {Geofence[]} geofences - The complete list of geofences that should be active.
+ * @returns {Promise<string>} A promise that resolves with a success message.
+ */
+const syncGeofences = async (geofences: Geofence[]): Promise<string> => {
+  try {
+    const result = await GeofenceModule.syncGeofences(geofences);
+    console.log(`Geofences synced: ${geofences.length} active`);
+    return result;
+  } catch (error) {
+    console.error('Error syncing geofences:', error);
+    throw error;
+  }
+};
+
 export default {
   addGeofence,
   removeGeofence,
+  syncGeofences,
 };
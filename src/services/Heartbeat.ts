@@ -20,7 +20,6 @@ async function sendHeartbeat() {
                 batteryLevel,
                 isCharging,
                 ipAddress,
-                onlineStatus,
                 lastSync
             } = details;
 
@@ -29,7 +28,6 @@ async function sendHeartbeat() {
                     batteryLevel,
                     isCharging,
                     ipAddress,
-                    onlineStatus,
                     lastSync
                 } 
             });
@@ -1,12 +1,15 @@
 import { NativeModules } from 'react-native';
 import { db } from '../firebase/firebaseConfig';
-import { doc, onSnapshot, updateDoc } from 'firebase/firestore';
+import { doc, onSnapshot, writeBatch } from 'firebase/firestore';
 import { auth } from '../firebase/firebaseConfig';
 import MonitoringManager from './MonitoringManager'; // For executing commands
 // import WebRtcManager from './WebRtcManager'; // For executing WebRTC commands
 
 const { MonitoringModule } = NativeModules; // To call native methods directly
 
+// Status transitions landing within this window (e.g. executing -> completed) share one write
+const STATUS_FLUSH_WINDOW_MS = 300;
+
 interface RemoteCommand {
   type: string;
   payload?: any;
@@ -19,6 +22,9 @@ interface RemoteCommand {
 class RemoteCommandService {
   private unsubscribe: (() => void) | null = null;
   private childUid: string | null = null;
+  private pendingStatus: { [field: string]: any } = {};
+  private pendingWaiters: { resolve: () => void; reject: (error: unknown) => void }[] = [];
+  private flushTimer: ReturnType<typeof setTimeout> | null = null;
 
   init() {
     this.childUid = auth.currentUser?.uid || null;
@@ -36,9 +42,14 @@ class RemoteCommandService {
         console.log('RemoteCommandService: Received command:', commandData.type, commandData.status);
 
         if (commandData.status === 'pending') {
-          // Acknowledge command reception
-          await this.updateCommandStatus(commandData.id!, 'executing');
-          await this.executeCommand(commandData);
+          try {
+            // Acknowledge command reception; not awaited so a quick result folds into the same write
+            const acknowledged = this.updateCommandStatus(commandData.id!, 'executing');
+            await this.executeCommand(commandData);
+            await acknowledged;
+          } catch (error) {
+            console.error(`RemoteCommandService: Error updating command status for ${commandData.id}:`, error);
+          }
         }
       }
     }, (error) => {
@@ -55,6 +66,8 @@ class RemoteCommandService {
   }
 
   private async executeCommand(command: RemoteCommand) {
+    let status: 'completed' | 'failed' = 'failed';
+    let errorMessage: string | undefined;
     try {
       let result: boolean = false;
       switch (command.type) {
@@ -87,25 +100,47 @@ class RemoteCommandService {
           console.warn('RemoteCommandService: Unknown command type:', command.type);
           result = false;
       }
-      await this.updateCommandStatus(command.id!, result ? 'completed' : 'failed');
+      status = result ? 'completed' : 'failed';
     } catch (error) {
       console.error('RemoteCommandService: Error executing command:', command.type, error);
-      await this.updateCommandStatus(command.id!, 'failed', (error as Error).message);
+      errorMessage = (error as Error).message;
     }
+    await this.updateCommandStatus(command.id!, status, errorMessage);
+  }
+
+  // Resolves once the transition is committed, rejects if the write fails
+  private updateCommandStatus(commandId: string, status: 'pending' | 'executing' | 'completed' | 'failed', errorMessage?: string): Promise<void> {
+    if (!this.childUid) return Promise.resolve();
+
+    // Later transitions of the same command overwrite earlier ones in the folded update
+    this.pendingStatus[`${commandId}.status`] = status;
+    this.pendingStatus[`${commandId}.updatedAt`] = new Date();
+    this.pendingStatus[`${commandId}.errorMessage`] = errorMessage || null;
+
+    return new Promise((resolve, reject) => {
+      this.pendingWaiters.push({ resolve, reject });
+      if (!this.flushTimer) {
+        this.flushTimer = setTimeout(() => this.flushCommandStatus(), STATUS_FLUSH_WINDOW_MS);
+      }
+    });
   }
 
-  private async updateCommandStatus(commandId: string, status: 'pending' | 'executing' | 'completed' | 'failed', errorMessage?: string) {
-    if (!this.childUid) return;
-    const commandDocRef = doc(db, 'commands', this.childUid);
+  // Written with the signed-in web SDK, which the commands/{childUid} rules require
+  private async flushCommandStatus() {
+    const updates = this.pendingStatus;
+    const waiters = this.pendingWaiters;
+    this.pendingStatus = {};
+    this.pendingWaiters = [];
+    this.flushTimer = null;
+
     try {
-      await updateDoc(commandDocRef, {
-        [`${commandId}.status`]: status, // Update the specific command's status
-        [`${commandId}.updatedAt`]: new Date(),
-        [`${commandId}.errorMessage`]: errorMessage || null,
-      });
-      console.log(`RemoteCommandService: Command ${commandId} status updated to ${status}`);
+      const batch = writeBatch(db);
+      batch.update(doc(db, 'commands', this.childUid!), updates);
+      await batch.commit();
+      console.log('RemoteCommandService: Command status updated:', updates);
+      waiters.forEach(waiter => waiter.resolve());
     } catch (error) {
-      console.error(`RemoteCommandService: Error updating command status for ${commandId}:`, error);
+      waiters.forEach(waiter => waiter.reject(error));
     }
   }
 }